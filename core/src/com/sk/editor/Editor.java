@@ -56,6 +56,8 @@ public class Editor extends Game {
 		// update the asset manager if assets are added post loading
 		if(assets.isFinished() == false){
 			//log.debug("updating assets");
+			// keep rendering while loading and once more to display the loaded assets
+			EditorManager.requestRendering();
 			if(assets.update()){
 				//...
 			}
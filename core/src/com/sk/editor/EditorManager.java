@@ -9,6 +9,7 @@ import com.sk.editor.utils.RenderMode;
 public class EditorManager {
     private PrefKeys prefKeys;
     private RenderMode renderMode;
+    private boolean idleRendering = Config.IDLE_RENDERING;
 
     public EditorManager(){
         prefKeys = new PrefKeys();
@@ -21,10 +22,41 @@ public class EditorManager {
 
     public void setRenderMode(RenderMode mode) {
         this.renderMode = mode;
+        updateContinuousRendering();
     }
 
     public RenderMode getRenderMode() {
         return renderMode;
     }
 
+
+    // -- rendering --
+
+    /**
+     * If true the editor only renders a frame on input, camera or world changes, finished asset loading,
+     * file events, running actions or when {@link #requestRendering()} is called.
+     * Always renders continuously in {@link RenderMode#GAME}.
+     */
+    public void setIdleRendering(boolean idleRendering) {
+        this.idleRendering = idleRendering;
+        updateContinuousRendering();
+    }
+
+    public boolean isIdleRendering() {
+        return idleRendering;
+    }
+
+    /**
+     * Requests a frame to be rendered in idle mode. Can be called from any thread.
+     */
+    public static void requestRendering() {
+        if (Gdx.graphics != null) Gdx.graphics.requestRendering();
+    }
+
+    private void updateContinuousRendering() {
+        if (Gdx.graphics == null) return;
+        Gdx.graphics.setContinuousRendering(!idleRendering || renderMode.isGame());
+        requestRendering();
+    }
+
 }
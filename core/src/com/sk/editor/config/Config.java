@@ -24,6 +24,77 @@ public class Config {
 
 	public static final String CLASS_PATH_DIR_NAME = "compiledClasses";
 
+	/**
+	 * the directory of the chunked scene inside the project directory
+	 */
+	public static final String SCENE_DIR_NAME = "scene";
+
+
+	// -- ecs --
+
+	/**
+	 * if true the hierarchies of different root canvases are updated in parallel each frame
+	 */
+	public static boolean PARALLEL_HIERARCHY_UPDATE = true;
+
+	/**
+	 * the fixed rate logic systems are processed at
+	 */
+	public static int LOGIC_TICKS_PER_SECOND = 60;
+
+	/**
+	 * the max amount of seconds simulated per frame
+	 */
+	public static float MAX_FRAME_TIME = 0.25f;
+
+	/**
+	 * the seconds between automatic saves of the scene, 0 to only save on request
+	 */
+	public static float AUTOSAVE_INTERVAL = 30;
+
+	/**
+	 * the seconds between saves comparing all entities instead of only the ones marked as changed,
+	 * finds edits not reported to the ChangeTracker. 0 to never do so
+	 */
+	public static float AUTOSAVE_FULL_DIFF_INTERVAL = 300;
+
+	/**
+	 * if true only the pinned root canvases are loaded before the editor starts, the others are streamed in
+	 */
+	public static boolean STREAM_SCENE_LOADING = true;
+
+	/**
+	 * the max milliseconds per frame spent adding streamed canvases to the world
+	 */
+	public static float STREAMING_FRAME_BUDGET = 4;
+
+
+	// -- scripting --
+
+	/**
+	 * if true the compiled script classes are also written to the {@link #CLASS_PATH_DIR_NAME} directory in the background.
+	 * Loading always uses the classes compiled in memory
+	 */
+	public static boolean PERSIST_COMPILED_CLASSES = true;
+
+	/**
+	 * if true changes to the scripts are compiled and loaded in the background automatically
+	 */
+	public static boolean AUTO_RECOMPILE_SCRIPTS = true;
+
+	/**
+	 * the seconds to wait for further changes to the scripts before compiling them
+	 */
+	public static float SCRIPT_RECOMPILE_DELAY = 0.5f;
+
+
+	// -- rendering --
+
+	/**
+	 * if true the editor only renders when something changed. See {@link com.sk.editor.EditorManager#setIdleRendering(boolean)}
+	 */
+	public static boolean IDLE_RENDERING = true;
+
 
 	// -- preferences --
 
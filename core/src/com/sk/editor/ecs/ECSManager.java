@@ -1,12 +1,7 @@
 package com.sk.editor.ecs;
 
 import com.artemis.*;
-import com.artemis.io.ComponentLookupSerializer;
-import com.artemis.io.JsonArtemisSerializer;
 import com.artemis.io.SaveFileFormat;
-import com.artemis.link.EntityLinkManager;
-import com.artemis.link.LinkAdapter;
-import com.artemis.link.LinkListener;
 import com.artemis.managers.WorldSerializationManager;
 import com.artemis.utils.Bag;
 import com.artemis.utils.IntBag;
@@ -16,22 +11,30 @@ import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.utils.*;
-import com.badlogic.gdx.utils.reflect.ClassReflection;
-import com.badlogic.gdx.utils.reflect.Method;
-import com.badlogic.gdx.utils.reflect.ReflectionException;
 import com.badlogic.gdx.utils.viewport.Viewport;
 import com.sk.editor.Editor;
+import com.sk.editor.EditorManager;
 import com.sk.editor.config.Config;
 import com.sk.editor.ecs.components.Canvas;
+import com.sk.editor.ecs.components.Image;
 import com.sk.editor.ecs.components.Transform;
+import com.sk.editor.ecs.io.AutosaveService;
+import com.sk.editor.ecs.io.BinaryWorldSerializer;
+import com.sk.editor.ecs.io.SceneFiles;
+import com.sk.editor.ecs.io.SceneStreamer;
+import com.sk.editor.ecs.io.TextureRegionCodec;
 import com.sk.editor.ecs.systems.*;
 import com.sk.editor.ecs.utils.CustomJsonArtemisSerializer;
+import com.sk.editor.ecs.utils.SpatialIndex;
+import com.sk.editor.ecs.utils.TextureRegionCache;
 import com.sk.editor.ui.NotifyingOrthographicCamera;
 import com.sk.editor.ui.UIStage;
 import com.sk.editor.ui.logger.EditorLogger;
 import com.sk.editor.utils.ArrayPool;
 
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class ECSManager implements NotifyingOrthographicCamera.CameraListener {
 
@@ -40,7 +43,11 @@ public class ECSManager implements NotifyingOrthographicCamera.CameraListener {
     private Viewport ecsViewport, uiViewport;
     private World world;
     private WorldSerializationManager worldSerializationManager;
-    private EntityLinkManager entityLinkManager;
+    private BinaryWorldSerializer binarySerializer;
+    private AutosaveService autosaveService;
+    private SceneStreamer sceneStreamer;
+    private HierarchyManager hierarchyManager;
+    private FixedTimestepInvocationStrategy invocationStrategy;
     private Archetype transformArchetype, canvasArchetype;
     private EntitySubscription transformSubscription;
     private IntBag tmpIntBag = new IntBag();
@@ -67,13 +74,19 @@ public class ECSManager implements NotifyingOrthographicCamera.CameraListener {
         WorldConfiguration config = new WorldConfigurationBuilder()
                 .with(
                         this.worldSerializationManager = new WorldSerializationManager(),
-                        this.entityLinkManager = new EntityLinkManager(),
+                        new ChangeTracker(),
+                        this.hierarchyManager = new HierarchyManager(),
+                        new RootCanvasManager(),
                         new TransformSystem(),
                         //new ScriptSystem(),
                         new RenderSystem(editor.getBatch(), editor.getEditorManager(), ecsViewport),
                         new DebugSystem(editor.getShapeRenderer(),  editor.getEditorManager(), ecsViewport))
                 .build();
 
+        // logic systems at a fixed rate, render systems once per frame
+        config.setInvocationStrategy(invocationStrategy =
+                new FixedTimestepInvocationStrategy(Config.LOGIC_TICKS_PER_SECOND, Config.MAX_FRAME_TIME));
+
         // create injector
         //config.setInjector(new CachedInjector());
 
@@ -82,104 +95,32 @@ public class ECSManager implements NotifyingOrthographicCamera.CameraListener {
 
         //setup
         setupWorldSerializationManager();
-        setupEntityLinkManager();
     }
 
     private void setupWorldSerializationManager() {
         // for be able to de-/serialize components etc. from class loader loading the
         // external projects' classes as well
-        JsonArtemisSerializer serializer = new CustomJsonArtemisSerializer(world);
-
-        // texture region
-        serializer.register(TextureRegion.class, new TextureRegionSerializer(editor.getAssetManager()));
-        worldSerializationManager.setSerializer(serializer);
-    }
-
-
-    private void setupEntityLinkManager(){
-        // -- register link listeners --
-        // parent field
-        entityLinkManager.register(Transform.class, "parent", new LinkListener(){
-            ComponentMapper<Transform> transformMapper;
-
-            @Override // field value updated after being null
-            public void onLinkEstablished(int sourceId, int targetId) {
-                Transform transform = transformMapper.get(sourceId);
-                Transform parentTransform;
-
-                // if parent has no Transform: create
-                if(!transformMapper.has(targetId))parentTransform = transformMapper.create(targetId);
-                else parentTransform = transformMapper.get(targetId);
-
-                //check if parent has entity as child already : else add
-                if(parentTransform.hasChild(world.getEntity(sourceId)) == false)
-                    parentTransform.addChild(transform);
-
-            }
-
-            @Override // deletion of component or source entity
-            public void onLinkKilled(int sourceId, int targetId) {
-                transformMapper.get(sourceId).removeFromParent(); // changed to root inserted at its index
-            }
-
-            @Override // reference entity deleted(field auto reset to null)
-            public void onTargetDead(int sourceId, int deadTargetId) {
-                transformMapper.get(sourceId).removeFromWorld();
-            }
-
-            @Override
-            public void onTargetChanged(int sourceId, int targetId, int oldTargetId) {
-                Transform transform = transformMapper.get(sourceId);
-                Transform oldParent = transformMapper.get(oldTargetId);
-                Transform newParent;
-
-                // if new parent has no Transform: create
-                if(!transformMapper.has(targetId))newParent = transformMapper.create(targetId);
-                else newParent = transformMapper.get(targetId);
-
-                //remove child from old parent
-                oldParent.removeChildFromParent(transform);
+        CustomJsonArtemisSerializer serializer = new CustomJsonArtemisSerializer(world);
 
-                //check if new parent has entity as child already : else add
-                if(newParent.hasChild(world.getEntity(sourceId)) == false)
-                    newParent.addChild(transform);
-
-            }
-        });
-        // children field
-        entityLinkManager.register(Transform.class, "children", new LinkAdapter(){
-            ComponentMapper<Transform> transformMapper;
-
-            @Override
-            public void onLinkEstablished(int sourceId, int targetId) {
-                Transform transform = transformMapper.get(sourceId);
-                Bag<Entity> children = transformMapper.get(sourceId).children;
-                children.forEach(e -> {
-                    Transform childTransform;
-                    // create transform for new child
-                    if(!transformMapper.has(e)) childTransform = transformMapper.create(e);
-                    else childTransform = transformMapper.get(e);
-
-                    // set parent of new child if missing
-                    if(childTransform.hasParent(transform) == false)
-                        childTransform.setParent(transform);
-                });
-            }
-
-            @Override // deletion of source entity or its component
-            public void onLinkKilled(int sourceId, int targetId) {
-                transformMapper.get(sourceId).removeFromWorld(); // remove every child
-            }
+        // texture region, loaded regions are shared by the json and binary format
+        TextureRegionCache regionCache = new TextureRegionCache(editor.getAssetManager());
+        serializer.register(TextureRegion.class, new TextureRegionSerializer(regionCache));
 
-            @Override // reference entity deleted (field auto reset to null or (?))
-            public void onTargetDead(int sourceId, int deadTargetId) {
-                transformMapper.get(deadTargetId).removeFromWorld(); // removing child (?)
-            }
-
-        });
+        // direct field access for the most common components
+        serializer.registerCodec(Transform.class, new Transform.JsonCodec());
+        serializer.registerCodec(Canvas.class, new Canvas.JsonCodec());
+        serializer.registerCodec(Image.class, new Image.JsonCodec());
+        worldSerializationManager.setSerializer(serializer);
 
+        // binary scene files
+        binarySerializer = new BinaryWorldSerializer(world);
+        binarySerializer.register(TextureRegion.class, new TextureRegionCodec(regionCache));
+        autosaveService = new AutosaveService(world, binarySerializer, this::getSceneDirectory, Config.AUTOSAVE_INTERVAL);
+        autosaveService.setFullDiffInterval(Config.AUTOSAVE_FULL_DIFF_INTERVAL);
+        sceneStreamer = new SceneStreamer(binarySerializer, autosaveService, Config.STREAMING_FRAME_BUDGET);
     }
 
+
     private void initArchetypes(){
         transformArchetype = new ArchetypeBuilder().add(Transform.class).build(world);
 
@@ -188,40 +129,24 @@ public class ECSManager implements NotifyingOrthographicCamera.CameraListener {
 
     private void initSubscription() {
         transformSubscription = world.getAspectSubscriptionManager().get(Aspect.all(Transform.class));
+
+        // idle rendering: display created, deleted and changed entities
+        world.getAspectSubscriptionManager().get(Aspect.all()).addSubscriptionListener(
+                new EntitySubscription.SubscriptionListener() {
+                    @Override
+                    public void inserted(IntBag entities) {
+                        EditorManager.requestRendering();
+                    }
+
+                    @Override
+                    public void removed(IntBag entities) {
+                        EditorManager.requestRendering();
+                    }
+                });
     }
 
     // -- save & load --
 
-    /**
-     *
-     * @param subscription
-     * @return the JSON string
-     */
-    private String saveToString(EntitySubscription subscription) throws Exception {
-        return saveToString(subscription.getEntities());
-    }
-
-    /**
-     * saves the intBag to a string
-     * @param intBag
-     * @return the JSON string
-     */
-    private String saveToString(IntBag intBag) throws Exception {
-        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        final SaveFileFormat save = new SaveFileFormat(intBag);
-        worldSerializationManager.save(bos, save);
-        String json = new String(bos.toByteArray());
-        return json;
-    }
-    private void saveToPrefs(IntBag entities){
-        try {
-            String json = saveToString(entities);
-            editor.getEditorManager().getPrefKeys().WORLD_SERIALIZATION.set(json);
-            log.debug("Saving successful.");
-        } catch (Exception e) {
-            log.error("Saving Failed.", e);
-        }
-    }
     private void loadFromPrefs(){
         String json = editor.getEditorManager().getPrefKeys().WORLD_SERIALIZATION.get();
         try {
@@ -269,13 +194,64 @@ public class ECSManager implements NotifyingOrthographicCamera.CameraListener {
 
 
 
+    private void loadFromSceneDirectory(Path directory){
+        try {
+            sceneStreamer.load(directory, Config.STREAM_SCENE_LOADING);
+            log.debug("Loading successful" + (sceneStreamer.isLoading() ? ", streaming the remaining canvases." : "."));
+        } catch (IOException e) {
+            log.error("Loading failed.", e);
+        }
+    }
+
+    /**
+     * @return the chunked scene directory inside the current project or the editors' fallback if there is no project
+     */
+    private Path getSceneDirectory(){
+        String projectPath = editor.getEditorManager().getPrefKeys().PROJECT_PATH.get();
+        if(projectPath != null && !projectPath.isEmpty()) return Paths.get(projectPath, Config.SCENE_DIR_NAME);
+        return Gdx.files.external(Config.WORLD_SAVE_FILE + "-" + Config.SCENE_DIR_NAME).file().toPath();
+    }
+
+
+    /**
+     * Saves the changed root subtrees to the scene directory in the background. Returns immediately.
+     * See {@link AutosaveService}
+     */
     public void saveWorld(){
-        EntitySubscription subscription = world.getAspectSubscriptionManager().get(Aspect.all());
-        saveToPrefs(subscription.getEntities());
+        autosaveService.save();
     }
+
+    /**
+     * Loads the chunked scene directory or, if there is none yet, the legacy json of the preferences. Canvases might still be streamed in afterwards, see {@link SceneStreamer}
+     */
     public void loadWorld(){
-        loadFromPrefs();
-        //...
+        Path directory = getSceneDirectory();
+        if(SceneFiles.hasManifest(directory)) loadFromSceneDirectory(directory);
+        else loadFromPrefs();
+    }
+
+
+    /**
+     * Recreates the components whose class has been loaded by a former script class loader with the classes of the
+     * current context class loader, so the open scene uses the recompiled scripts. The field values are kept.
+     * Has to be called on the GL thread between frames, see {@link com.sk.editor.scripting.ScriptManager.ReloadListener}
+     */
+    public void reloadScriptComponents(){
+        ClassLoader current = Thread.currentThread().getContextClassLoader();
+        ClassLoader editorLoader = ECSManager.class.getClassLoader();
+        IntBag entities = world.getAspectSubscriptionManager().get(Aspect.all()).getEntities();
+        try {
+            binarySerializer.reloadComponents(entities,
+                    type -> type.getClassLoader() != editorLoader && type.getClassLoader() != current, tmpIntBag);
+            ChangeTracker changeTracker = getChangeTracker();
+            for(int i = 0, n = tmpIntBag.size(); i < n; i++)changeTracker.markChanged(tmpIntBag.get(i));
+            log.debug("Reloaded the script components of " + tmpIntBag.size() + " entities.");
+        } catch (IOException e) {
+            log.error("Reloading the script components failed.", e);
+        } finally {
+            tmpIntBag.clear();
+        }
+        EditorManager.requestRendering();
     }
 
 
@@ -287,42 +263,103 @@ public class ECSManager implements NotifyingOrthographicCamera.CameraListener {
     public <T extends Component> ComponentMapper<T> getMapper(Class<T> component){
         return world.getMapper(component);
     }
+    /**
+     * Processes the logic systems as many fixed steps as the delta allows, then the render systems once.
+     * Has to be called on the GL thread.
+     * @param delta the frame time
+     */
     public void processWorld(float delta){
+        sceneStreamer.update();
         world.setDelta(delta);
         world.process();
+        autosaveService.update(delta);
+    }
+
+    /**
+     * @return the interpolation factor between the previous and the current logic state
+     */
+    public float getInterpolationAlpha(){
+        return invocationStrategy.getAlpha();
     }
 
 
 
 
     /**
-     *
-     * @return Maybe null
+     * Uses the spatial index of each root canvas as of the last processed frame.
+     * @return Maybe null. The top-most entity containing the screen coordinate
      */
     public @Null Entity hitScreen(float screenX, float screenY){
         ComponentMapper<Transform> transformMapper = getTransformMapper();
-        Vector2 localCoord = Pools.obtain(Vector2.class);
+        SpatialIndex spatialIndex = world.getSystem(TransformSystem.class).getSpatialIndex();
+        Vector2 worldCoord = Pools.obtain(Vector2.class);
+
+        // get root entities
+        IntBag rootIds = world.getSystem(RootCanvasManager.class).getRootCanvases();
+
+        // iterate from last added to first
+        Transform hit = null;
+        for(int i = rootIds.size() -1; i >= 0 && hit == null; i--){
+            int id = rootIds.get(i);
+            Transform transform = transformMapper.getSafe(id, null);
+            if(transform == null)continue;
+            transform.screenToWorldCoord(worldCoord.set(screenX, screenY));
+
+            // candidates are sorted top-most first: exact check for rotated bounds
+            tmpIntBag.clear();
+            spatialIndex.queryPoint(id, worldCoord.x, worldCoord.y, tmpIntBag);
+            for(int j = 0, n = tmpIntBag.size(); j < n; j++){
+                Transform candidate = transformMapper.getSafe(tmpIntBag.get(j), null);
+                if(candidate != null && candidate.containsWorld(worldCoord.x, worldCoord.y)){
+                    hit = candidate;
+                    break;
+                }
+            }
+        }
+        tmpIntBag.clear();
+        Pools.free(worldCoord);
+        return hit == null ? null : hit.entity;
+    }
+
+    /**
+     * Collects all entities whose world bounds overlap the screen rectangle (i.e. for marquee selection).
+     * Uses the spatial index of each root canvas as of the last processed frame.
+     * @param out the bag to add the entities to, top-most first
+     * @return the given bag
+     */
+    public Bag<Entity> hitScreen(float screenX1, float screenY1, float screenX2, float screenY2, Bag<Entity> out){
+        ComponentMapper<Transform> transformMapper = getTransformMapper();
+        SpatialIndex spatialIndex = world.getSystem(TransformSystem.class).getSpatialIndex();
+        Vector2 corner1 = Pools.obtain(Vector2.class);
+        Vector2 corner2 = Pools.obtain(Vector2.class);
 
         // get root entities
-        Bag<Entity> rootEntities = Pools.obtain(Bag.class);
-        rootEntities.clear();
-        world.getSystem(RenderSystem.class).getRootCanvases(rootEntities);
+        IntBag rootIds = world.getSystem(RootCanvasManager.class).getRootCanvases();
 
         // iterate from last added to first
-        for(int i = rootEntities.size() -1; i >= 0; i--){
-            int id = rootEntities.get(i).getId();
+        for(int i = rootIds.size() -1; i >= 0; i--){
+            int id = rootIds.get(i);
             Transform transform = transformMapper.getSafe(id, null);
             if(transform == null)continue;
-            // check if hitting
-            transform.screenToParentCoord(localCoord.set(screenX, screenY));
-            transform.parentToLocalCoord(localCoord);
-            Transform hit = transform.hit(localCoord.x, localCoord.y);
-            if(hit != null)return hit.entity;
+            transform.screenToWorldCoord(corner1.set(screenX1, screenY1));
+            transform.screenToWorldCoord(corner2.set(screenX2, screenY2));
+
+            tmpIntBag.clear();
+            spatialIndex.queryRect(id,
+                    Math.min(corner1.x, corner2.x), Math.min(corner1.y, corner2.y),
+                    Math.max(corner1.x, corner2.x), Math.max(corner1.y, corner2.y), tmpIntBag);
+            for(int j = 0, n = tmpIntBag.size(); j < n; j++){
+                out.add(world.getEntity(tmpIntBag.get(j)));
+            }
         }
-        Pools.free(localCoord);
-        rootEntities.clear();
-        Pools.free(rootEntities);
-        return null;
+        tmpIntBag.clear();
+        Pools.free(corner1);
+        Pools.free(corner2);
+        return out;
+    }
+
+    public HierarchyManager getHierarchyManager(){
+        return hierarchyManager;
     }
 
     public ComponentMapper<Transform> getTransformMapper(){
@@ -393,9 +430,26 @@ public class ECSManager implements NotifyingOrthographicCamera.CameraListener {
 
 
     /**
-     * disposes the world
+     * Inform it after editing components so the changes are saved, see {@link AutosaveService}
+     */
+    public ChangeTracker getChangeTracker(){
+        return world.getSystem(ChangeTracker.class);
+    }
+
+    public AutosaveService getAutosaveService(){
+        return autosaveService;
+    }
+
+    public SceneStreamer getSceneStreamer(){
+        return sceneStreamer;
+    }
+
+    /**
+     * waits for the save in flight and disposes the world
      */
     public void dispose(){
+        sceneStreamer.dispose();
+        autosaveService.dispose();
         world.dispose();
     }
 
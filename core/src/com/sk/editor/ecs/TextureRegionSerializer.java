@@ -1,12 +1,11 @@
 package com.sk.editor.ecs;
 
-import com.badlogic.gdx.assets.AssetManager;
-import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.TextureAtlas;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.utils.Json;
 import com.badlogic.gdx.utils.JsonValue;
 import com.badlogic.gdx.utils.Logger;
+import com.sk.editor.ecs.utils.TextureRegionCache;
 
 /**
  * all to be de/-serialized texture regions must be loaded to the assetManager
@@ -15,10 +14,10 @@ public class TextureRegionSerializer implements Json.Serializer<TextureRegion> {
 
     private static final Logger log = new Logger(TextureRegionSerializer.class.toString(), Logger.DEBUG);
 
-    AssetManager assetManager;
+    TextureRegionCache cache;
 
-    public TextureRegionSerializer(AssetManager assetManager){
-        this.assetManager = assetManager;
+    public TextureRegionSerializer(TextureRegionCache cache){
+        this.cache = cache;
     }
 
     @Override
@@ -55,8 +54,7 @@ public class TextureRegionSerializer implements Json.Serializer<TextureRegion> {
         if(hasAtlas){
             String name = json.readValue("name", String.class, jsonData);
             int index = json.readValue("index", int.class, jsonData);
-            TextureAtlas atlas = assetManager.get(texturePath, TextureAtlas.class, true);
-            return atlas.findRegion(name, index);
+            return cache.getAtlasRegion(texturePath, name, index);
         }
 
         // texture region (maybe sprite)
@@ -67,13 +65,8 @@ public class TextureRegionSerializer implements Json.Serializer<TextureRegion> {
         int regionWidth = json.readValue("regionWidth", int.class, jsonData);
         int regionHeight = json.readValue("regionHeight", int.class, jsonData);
 
-        TextureRegion region = new TextureRegion();
         //textures and atlases have to be loaded to the asset manager
-        region.setTexture(assetManager.get(texturePath, Texture.class, true));
-        region.setRegion(u, v, u2, v2);
-        region.setRegionWidth(regionWidth);
-        region.setRegionHeight(regionHeight);
-        return region;
+        return cache.getRegion(texturePath, u, v, u2, v2, regionWidth, regionHeight);
     }
 
 
@@ -6,7 +6,10 @@ import com.artemis.PooledComponent;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.JsonValue;
 import com.badlogic.gdx.utils.Logger;
 import com.badlogic.gdx.utils.SnapshotArray;
 import com.badlogic.gdx.utils.viewport.ScreenViewport;
@@ -15,6 +18,7 @@ import com.sk.editor.EditorManager;
 import com.sk.editor.ui.UIStage;
 import com.sk.editor.ui.logger.EditorLogger;
 import com.sk.editor.utils.RenderMode;
+import com.sk.editor.ecs.utils.JsonComponentCodec;
 
 public class Canvas extends Script{
 
@@ -103,6 +107,17 @@ public class Canvas extends Script{
         return viewport.unproject(screenCoord);
     }
 
+    /**
+     * @param out the rectangle to set
+     * @return the given rectangle set to the world area visible through the camera
+     */
+    public Rectangle getWorldView(Rectangle out){
+        OrthographicCamera camera = (OrthographicCamera) viewport.getCamera();
+        float width = camera.viewportWidth * camera.zoom;
+        float height = camera.viewportHeight * camera.zoom;
+        return out.set(camera.position.x - width / 2f, camera.position.y - height / 2f, width, height);
+    }
+
     /**
      * @return the combined projection and view matrix of the camera
      */
@@ -117,4 +132,27 @@ public class Canvas extends Script{
         return viewport.getScreenHeight();
     }
 
+
+    /**
+     * Writes and reads the fields directly instead of libGDX' reflective field walk.
+     * Uses the same keys as the reflective format.
+     */
+    public static class JsonCodec implements JsonComponentCodec<Canvas> {
+
+        @Override
+        public void write(Json json, Canvas object) {
+            json.writeValue("init", object.isInit());
+            json.writeValue("centerCamera", object.centerCamera);
+            json.writeValue("uppX", object.uppX);
+            json.writeValue("uppY", object.uppY);
+        }
+
+        @Override
+        public void read(Json json, JsonValue jsonData, Canvas canvas) {
+            canvas.setInit(jsonData.getBoolean("init", false));
+            canvas.centerCamera = jsonData.getBoolean("centerCamera", false);
+            canvas.uppX = jsonData.getFloat("uppX", 1);
+            canvas.uppY = jsonData.getFloat("uppY", 1);
+        }
+    }
 }
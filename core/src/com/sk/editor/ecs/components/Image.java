@@ -3,7 +3,10 @@ package com.sk.editor.ecs.components;
 import com.artemis.PooledComponent;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.graphics.glutils.FileTextureData;
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.JsonValue;
 import com.badlogic.gdx.utils.Null;
+import com.sk.editor.ecs.utils.JsonComponentCodec;
 
 /**
  * uses @{@link com.sk.editor.ecs.TextureRegionSerializer} to serialize region
@@ -23,4 +26,23 @@ public class Image extends Script {
     protected void reset() {
         region = null;
     }
+
+    /**
+     * Writes and reads the fields directly instead of libGDX' reflective field walk.
+     * Uses the same keys as the reflective format. The region is written by the registered region serializer.
+     */
+    public static class JsonCodec implements JsonComponentCodec<Image> {
+
+        @Override
+        public void write(Json json, Image object) {
+            json.writeValue("init", object.isInit());
+            json.writeValue("region", object.region, TextureRegion.class);
+        }
+
+        @Override
+        public void read(Json json, JsonValue jsonData, Image image) {
+            image.setInit(jsonData.getBoolean("init", false));
+            image.region = json.readValue("region", TextureRegion.class, jsonData);
+        }
+    }
 }
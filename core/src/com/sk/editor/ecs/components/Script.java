@@ -20,6 +20,17 @@ public class Script extends PooledComponent {
         update();
     }
 
+    /**
+     * @return true if {@link #create()} has been called. Saved with the component
+     */
+    protected boolean isInit() {
+        return init;
+    }
+
+    protected void setInit(boolean init) {
+        this.init = init;
+    }
+
     @Override
     protected void reset() {
         init = false;
@@ -1,40 +1,111 @@
 package com.sk.editor.ecs.components;
 
+import com.artemis.ComponentMapper;
+import com.artemis.annotations.DelayedComponentRemoval;
+import com.artemis.annotations.EntityId;
 import com.artemis.utils.Bag;
+import com.artemis.utils.IntBag;
+import com.badlogic.gdx.math.Affine2;
 import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.JsonValue;
 import com.badlogic.gdx.utils.Null;
+import com.sk.editor.ui.inspector.InvokeMethod;
 import com.sk.editor.ui.inspector.SerializeField;
+import com.sk.editor.ecs.systems.ChangeTracker;
+import com.sk.editor.ecs.systems.HierarchyManager;
+import com.sk.editor.ecs.utils.JsonComponentCodec;
 import com.sk.editor.ecs.utils.Align;
 import com.artemis.Entity;
 import com.sk.editor.utils.Nonnull;
 
-import java.util.Comparator;
-
+/**
+ * Parent and children are entity ids kept consistent by the {@link HierarchyManager}, which also needs the
+ * component to still be accessible when its entity is removed.
+ */
+@DelayedComponentRemoval
 public class Transform extends Script {
 
-    private transient final static TransformComparator comparator = new TransformComparator();
-
     private transient final Rectangle bounds = new Rectangle();
     private transient final Vector2 tmp = new Vector2();
+    /**
+     * The cached local to world matrix and its inverse. Only valid if {@link #worldDirty} is false.
+     */
+    private transient final Affine2 worldTransform = new Affine2(), worldInverse = new Affine2();
+    private transient final Affine2 localTransform = new Affine2();
+    /**
+     * false if the world matrix can not be inverted (i.e. a scale of 0)
+     */
+    private transient boolean worldInvertible = true;
+    /**
+     * a marker that the cached world matrix has to be recalculated. If set all descendants are marked as well.
+     */
+    private transient boolean worldDirty = true;
+    /**
+     * a marker that the world bounds changed since the last spatial index update
+     */
+    private transient boolean boundsChanged = true;
 
     /**
      * The entity holding this component.
      * Upon adding the component to an entity this value
      * is changed to the entity holding the component.
-     * This is set in @{@link com.sk.editor.ecs.systems.TransformSystem}
+     * This is set in @{@link HierarchyManager}
      */
     public Entity entity;
-    public @Null Entity parent;
-    public Bag<Entity> children = new Bag<>();
+    /**
+     * The entity id of the parent or -1
+     */
+    @EntityId
+    public int parent = -1;
+    /**
+     * The entity ids of the children
+     */
+    @EntityId
+    public IntBag children = new IntBag();
+    /**
+     * Resolves parent and children. Set in @{@link HierarchyManager} or on first access.
+     */
+    public transient ComponentMapper<Transform> mapper;
+    /**
+     * Informed about parent changes. Set in @{@link HierarchyManager}
+     */
+    public transient @Null HierarchyManager hierarchy;
+    /**
+     * Informed about edits. Set in @{@link HierarchyManager}
+     */
+    public transient @Null ChangeTracker changes;
     @Nonnull
     @SerializeField
     private String name = "unnamed";
     /**
-     * Coordinates in parent coordinate system relative to bottom left corner
+     * Coordinates in parent coordinate system relative to bottom left corner.
+     * When changed directly call {@link #invalidateWorld()} afterwards.
      */
+    @InvokeMethod(name = "invalidateWorld")
     public float x, y;
+    /**
+     * When changed directly call {@link #invalidateBounds()} afterwards.
+     */
+    @InvokeMethod(name = "invalidateBounds")
     public float width, height;
+    /**
+     * The point to rotate and scale around, relative to the bottom left corner.
+     * When changed directly call {@link #invalidateWorld()} afterwards.
+     */
+    @InvokeMethod(name = "invalidateWorld")
+    public float originX, originY;
+    /**
+     * When changed directly call {@link #invalidateWorld()} afterwards.
+     */
+    @InvokeMethod(name = "invalidateWorld")
+    public float scaleX = 1, scaleY = 1;
+    /**
+     * In degrees counter clockwise. When changed directly call {@link #invalidateWorld()} afterwards.
+     */
+    @InvokeMethod(name = "invalidateWorld")
+    public float rotation;
 
 
     private int index;
@@ -60,6 +131,7 @@ public class Transform extends Script {
     public void setName(String name) {
         if (name == null) name = "";
         this.name = name;
+        markChanged();
     }
 
     public String getName() {
@@ -81,6 +153,8 @@ public class Transform extends Script {
         this.y = y;
         this.width = width;
         this.height = height;
+        invalidateWorld();
+        invalidateBounds();
     }
 
 
@@ -88,6 +162,7 @@ public class Transform extends Script {
     public void setSize(float width, float height) {
         this.width = width;
         this.height = height;
+        invalidateBounds();
     }
 
     public Vector2 getSize(Vector2 size) {
@@ -99,6 +174,7 @@ public class Transform extends Script {
     public void setPosition(float x, float y) {
         this.x = x;
         this.y = y;
+        invalidateWorld();
     }
 
     public void setPosition(float x, float y, int alignment) {
@@ -129,6 +205,7 @@ public class Transform extends Script {
         } else if (alignment == Align.topRight || alignment == Align.right || alignment == Align.bottomRight) {
             this.x = x - width;
         }
+        invalidateWorld();
     }
 
     public float getX(int alignment) {
@@ -153,6 +230,7 @@ public class Transform extends Script {
         } else if (alignment == Align.topLeft || alignment == Align.top || alignment == Align.topRight) {
             this.y = y - height;
         }
+        invalidateWorld();
     }
 
     public float getY(int alignment) {
@@ -176,6 +254,7 @@ public class Transform extends Script {
 
     public void setWidth(float width) {
         this.width = width;
+        invalidateBounds();
     }
 
 
@@ -186,6 +265,65 @@ public class Transform extends Script {
 
     public void setHeight(float height) {
         this.height = height;
+        invalidateBounds();
+    }
+
+
+    // -- origin --
+    public void setOrigin(float originX, float originY) {
+        this.originX = originX;
+        this.originY = originY;
+        invalidateWorld();
+    }
+
+    /**
+     * sets the origin relative to the bottom left corner using the alignment
+     */
+    public void setOrigin(int alignment) {
+        setOrigin(getX(alignment) - x, getY(alignment) - y);
+    }
+
+    public float getOriginX() {
+        return originX;
+    }
+
+    public float getOriginY() {
+        return originY;
+    }
+
+
+    // -- scale --
+    public void setScale(float scaleXY) {
+        setScale(scaleXY, scaleXY);
+    }
+
+    public void setScale(float scaleX, float scaleY) {
+        this.scaleX = scaleX;
+        this.scaleY = scaleY;
+        invalidateWorld();
+    }
+
+    public float getScaleX() {
+        return scaleX;
+    }
+
+    public float getScaleY() {
+        return scaleY;
+    }
+
+
+    // -- rotation --
+
+    /**
+     * @param degrees counter clockwise
+     */
+    public void setRotation(float degrees) {
+        this.rotation = degrees;
+        invalidateWorld();
+    }
+
+    public float getRotation() {
+        return rotation;
     }
 
 
@@ -198,50 +336,73 @@ public class Transform extends Script {
      * @return Maybe null
      */
     public @Null Transform hit(float x, float y) {
+        localToWorldCoord(tmp.set(x, y));
+        return hitWorld(tmp.x, tmp.y);
+    }
+
+    /***
+     * checks children first from last added to first then itself. Uses the cached world matrices.
+     * @param worldX in world coord
+     * @param worldY in world coord
+     * @return Maybe null
+     */
+    public @Null Transform hitWorld(float worldX, float worldY) {
         // check children hit first
-        Transform hit = null;
         if (hasChildren()) {
             for (int i = children.size() - 1; i >= 0; i--) {
-                Entity child = children.get(i);
-                Transform childTransform = child.getComponent(Transform.class);
-                childTransform.parentToLocalCoord(tmp.set(x, y));
-                hit = childTransform.hit(tmp.x, tmp.y);
+                Transform hit = mapper().get(children.get(i)).hitWorld(worldX, worldY);
                 if (hit != null) return hit;
             }
         }
         // check itself last
-        localToParentCoord(tmp.set(x, y));
-        if (getBounds().contains(tmp)) return this;
-        return null;
+        return containsWorld(worldX, worldY) ? this : null;
+    }
+
+    /**
+     * checks only itself and not its children. Uses the cached inverse world matrix.
+     * @return true if the world point lies inside the (possibly rotated) bounds
+     */
+    public boolean containsWorld(float worldX, float worldY) {
+        validateWorld();
+        if (!worldInvertible) return false;
+        worldInverse.applyTo(tmp.set(worldX, worldY));
+        return tmp.x >= 0 && tmp.x <= width && tmp.y >= 0 && tmp.y <= height;
     }
 
 
     // -- parent --
     public @Null Transform getParent() {
-        return parent == null ? null : parent.getComponent(Transform.class);
+        return parent == -1 ? null : mapper().get(parent);
     }
 
     public @Null Entity getParentEntity() {
+        return parent == -1 ? null : entity.getWorld().getEntity(parent);
+    }
+
+    /**
+     * @return the entity id of the parent or -1
+     */
+    public int getParentId() {
         return parent;
     }
 
     public boolean hasParent() {
-        return parent != null;
+        return parent != -1;
     }
 
     public boolean hasParent(@Null Transform parent) {
-        return hasParent(parent == null ? null : parent.entity);
+        return parent == null ? this.parent == -1 : this.parent == parent.entity.getId();
     }
 
     public boolean hasParent(@Null Entity parent) {
-        return this.parent == parent;
+        return parent == null ? this.parent == -1 : this.parent == parent.getId();
     }
 
     /**
      * repositions the transform so that the world position stays the same
      */
     public void setParent(@Null Entity newParent, boolean keepWorldPosition) {
-        setParent(newParent == null ? null : newParent.getComponent(Transform.class), keepWorldPosition);
+        setParent(newParent == null ? null : mapper().get(newParent), keepWorldPosition);
     }
 
     public void setParent(@Null Transform newParent, boolean keepWorldPosition) {
@@ -261,30 +422,33 @@ public class Transform extends Script {
      * adds the child to its children
      */
     public void setParent(@Null Entity newParent) {
-        setParent(newParent == null ? null : newParent.getComponent(Transform.class));
+        setParent(newParent == null ? null : mapper().get(newParent));
     }
 
     /**
      * adds the child to its children
      */
     public void setParent(@Null Transform newParent) {
-        if (newParent != null && this.parent == newParent.entity) return;
+        if (newParent != null && hasParent(newParent)) return;
+        int id = entity.getId();
+        int oldParentId = this.parent;
 
         // has currently parent
-        if (this.parent != null) {
-            Transform oldParent = this.parent == null ? null : this.parent.getComponent(Transform.class);
-            oldParent.children.remove(this.entity);
+        if (this.parent != -1) {
+            Transform oldParent = mapper().get(this.parent);
+            oldParent.children.removeValue(id);
             oldParent.childrenChanged = true;
         }
         // set new parent
-        this.parent = newParent == null ? null : newParent.entity;
-        //parentDirty = true;
+        this.parent = newParent == null ? -1 : newParent.entity.getId();
+        invalidateWorld();
 
         // has new parent
         if (newParent != null) {
-            newParent.children.add(this.entity);
+            newParent.children.add(id);
             newParent.childrenChanged = true;
         }
+        notifyParentChanged(oldParentId);
     }
 
 
@@ -294,21 +458,60 @@ public class Transform extends Script {
      * sorts the children immediately and sets {@link #childrenChanged} to false;
      */
     public void sortChildren() {
-        children.sort(comparator);
+        // stable insertion sort by index: children are few and mostly sorted
+        ComponentMapper<Transform> mapper = mapper();
+        int[] ids = children.getData();
+        for (int i = 1, n = children.size(); i < n; i++) {
+            int id = ids[i];
+            int index = mapper.get(id).index;
+            int j = i - 1;
+            while (j >= 0 && mapper.get(ids[j]).index > index) {
+                ids[j + 1] = ids[j];
+                j--;
+            }
+            ids[j + 1] = id;
+        }
         childrenChanged = false;
     }
 
-
-    public Bag<Entity> getChildren() {
+    /**
+     * The entity ids of the children in sorted order once {@link #sortChildren()} has been called. Do not modify.
+     */
+    public IntBag getChildIds() {
         return children;
     }
 
+    /**
+     * @param out the bag to add the child entities to
+     * @return the given bag
+     */
+    public Bag<Entity> getChildren(Bag<Entity> out) {
+        for (int i = 0, n = children.size(); i < n; i++) out.add(entity.getWorld().getEntity(children.get(i)));
+        return out;
+    }
+
+    public int getChildCount() {
+        return children.size();
+    }
+
+    public Entity getChild(int i) {
+        return entity.getWorld().getEntity(children.get(i));
+    }
+
+    public Transform getChildTransform(int i) {
+        return mapper().get(children.get(i));
+    }
+
     public boolean hasChildren() {
         return children.size() != 0;
     }
 
     public boolean hasChild(Entity child) {
-        return children.contains(child);
+        return child != null && children.contains(child.getId());
+    }
+
+    public boolean hasChild(int childId) {
+        return children.contains(childId);
     }
 
     /**
@@ -316,15 +519,15 @@ public class Transform extends Script {
      * @returns the first child/ descendant instance carrying that name. Might be null.
      */
     public @Null Transform findChild(String name) {
+        ComponentMapper<Transform> mapper = mapper();
         // check immediate children first
-        for (Entity e : children) {
-            Transform child = e.getComponent(Transform.class);
+        for (int i = 0, n = children.size(); i < n; i++) {
+            Transform child = mapper.get(children.get(i));
             if (child.name.equals(name)) return child;
         }
         // check tree second
-        for (Entity e : children) {
-            Transform child = e.getComponent(Transform.class);
-            Transform t = child.findChild(name);
+        for (int i = 0, n = children.size(); i < n; i++) {
+            Transform t = mapper.get(children.get(i)).findChild(name);
             if (t != null) return t;
         }
         return null;
@@ -357,37 +560,37 @@ public class Transform extends Script {
     public void insertChild(int index, Entity child) {
         if (child == null || child == this.entity) return;
         index = Math.min(index, children.size());
+        int childId = child.getId();
 
-        Transform childTransform = child.getComponent(Transform.class);
+        Transform childTransform = mapper().get(childId);
+        int oldParentId = -1;
         // set child index
         childTransform.index = index;
 
         if (!childTransform.hasParent()) { // no pre-existing parent
-            //children.insert(index, child);
-            children.add(child);
-            //sortChildren();
+            children.add(childId);
 
         } else if (childTransform.hasParent(this)) { // pre-existing parent is this instance
-            Entity before = index == 0 ? null : children.get(index - 1);
-            children.remove(child);
-            //children.add(before == null ? 0 : children.indexOf(before, true) + 1, child);
-            children.add(child);
-            //sortChildren();
+            // position is given by the index
+            childrenChanged = true;
+            childTransform.markChanged();
             return;
         } else { // has a parent but not this instance
-            //child.parent.children.removeValue(child, true);
-            childTransform.parent.getComponent(Transform.class).children.remove(child);
-            //children.insert(index, child)
-            children.add(entity);
-            //sortChildren();
+            oldParentId = childTransform.parent;
+            Transform oldParent = mapper().get(oldParentId);
+            oldParent.children.removeValue(childId);
+            oldParent.childrenChanged = true;
+            children.add(childId);
         }
 
-        childTransform.parent = this.entity;
+        childTransform.parent = this.entity.getId();
+        childTransform.invalidateWorld();
         childrenChanged = true;
+        childTransform.notifyParentChanged(oldParentId);
     }
 
     public void insertChild(int index, Entity child, boolean keepWorldPosition) {
-        insertChild(index, child == null ? null : child.getComponent(Transform.class), keepWorldPosition);
+        insertChild(index, child == null ? null : mapper().get(child), keepWorldPosition);
     }
 
     /**
@@ -423,21 +626,23 @@ public class Transform extends Script {
     }
 
     public void addChild(Entity child) {
-        if (child != null) addChild(child.getComponent(Transform.class));
+        if (child != null) addChild(mapper().get(child));
     }
 
     public void removeChildFromParent(Entity child) {
-        removeChildFromParent(child == null ? null : child.getComponent(Transform.class));
+        removeChildFromParent(child == null ? null : mapper().get(child));
     }
     public void removeChildFromParent(Transform child) {
         if (child == null) return;
-        children.remove(child.entity);
-        child.parent = null;
+        if (!children.removeValue(child.entity.getId())) return;
+        child.parent = -1;
+        child.invalidateWorld();
         childrenChanged = true;
+        child.notifyParentChanged(entity.getId());
     }
 
     public void removeChildFromWorld(Entity child) {
-        removeChildFromWorld(child == null ? null : child.getComponent(Transform.class));
+        removeChildFromWorld(child == null ? null : mapper().get(child));
     }
 
     public void removeChildFromWorld(Transform child) {
@@ -481,14 +686,7 @@ public class Transform extends Script {
 
 
     public Vector2 screenToParentCoord(Vector2 screenCoord) {
-        tmp.set(screenToWorldCoord(screenCoord));
-        Entity parent = this.parent;
-        while (parent != null) {
-            Transform parentTransform = parent.getComponent(Transform.class);
-            tmp.sub(parentTransform.x, parentTransform.y);
-            parent = parentTransform.parent;
-        }
-        return screenCoord.set(tmp);
+        return worldToParentCoord(screenToWorldCoord(screenCoord));
     }
 
     public Vector2 parentToScreenCoord(Vector2 parentCoord) {
@@ -496,26 +694,19 @@ public class Transform extends Script {
     }
 
 
+    /**
+     * Leaves the coordinate unchanged if the world matrix can not be inverted (i.e. a scale of 0)
+     */
     public Vector2 worldToLocalCoord(Vector2 worldCoord) {
-        tmp.set(worldCoord);
-        Entity parent = this.entity;
-        while (parent != null) {
-            Transform parentTransform = parent.getComponent(Transform.class);
-            tmp.sub(parentTransform.x, parentTransform.y);
-            parent = parentTransform.parent;
-        }
-        return worldCoord.set(tmp);
+        validateWorld();
+        if (worldInvertible) worldInverse.applyTo(worldCoord);
+        return worldCoord;
     }
 
     public Vector2 localToWorldCoord(Vector2 localCoord) {
-        tmp.set(localCoord);
-        Entity parent = this.entity;
-        while (parent != null) {
-            Transform parentTransform = parent.getComponent(Transform.class);
-            tmp.add(parentTransform.x, parentTransform.y);
-            parent = parentTransform.parent;
-        }
-        return localCoord.set(tmp);
+        validateWorld();
+        worldTransform.applyTo(localCoord);
+        return localCoord;
     }
 
 
@@ -525,54 +716,172 @@ public class Transform extends Script {
 
 
     public Vector2 parentToWorldCoord(Vector2 parentCoord) {
-        tmp.set(parentCoord);
-        Entity parent = this.parent;
-        while (parent != null) {
-            Transform parentTransform = parent.getComponent(Transform.class);
-            tmp.add(parentTransform.x, parentTransform.y);
-            parent = parentTransform.parent;
-        }
-        return parentCoord.set(tmp);
+        Transform parent = getParent();
+        return parent == null ? parentCoord : parent.localToWorldCoord(parentCoord);
     }
 
     public Vector2 worldToParentCoord(Vector2 worldCoord) {
-        tmp.set(worldCoord);
-        Entity parent = this.parent;
-        while (parent != null) {
-            Transform parentTransform = parent.getComponent(Transform.class);
-            tmp.sub(parentTransform.x, parentTransform.y);
-            parent = parentTransform.parent;
-        }
-        return worldCoord.set(tmp);
+        Transform parent = getParent();
+        return parent == null ? worldCoord : parent.worldToLocalCoord(worldCoord);
     }
 
 
     public Vector2 localToParentCoord(Vector2 localCoord) {
-        tmp.set(localCoord);
-        tmp.add(x, y);
-        return localCoord.set(tmp);
+        computeLocalTransform(localTransform).applyTo(localCoord);
+        return localCoord;
     }
 
+    /**
+     * Leaves the coordinate unchanged if the local matrix can not be inverted (i.e. a scale of 0)
+     */
     public Vector2 parentToLocalCoord(Vector2 parentCoord) {
-        tmp.set(parentCoord);
-        tmp.sub(x, y);
-        return parentCoord.set(tmp);
+        computeLocalTransform(localTransform);
+        if (localTransform.det() != 0) localTransform.inv().applyTo(parentCoord);
+        return parentCoord;
+    }
+
+
+    // -- world --
+
+    /**
+     * Marks the cached world matrix of this transform and all its descendants to be recalculated on next access.
+     * Called by all setters. Call this when changing {@link #x}, {@link #y}, the origin, scale or rotation directly.
+     * Marks the entity as changed, see {@link ChangeTracker}.
+     */
+    public void invalidateWorld() {
+        markChanged();
+        invalidateWorldCache();
+    }
+
+    /**
+     * the descendants' data does not change, so they are not marked as changed
+     */
+    private void invalidateWorldCache() {
+        if (worldDirty) return; // descendants are dirty as well
+        worldDirty = true;
+        boundsChanged = true;
+        ComponentMapper<Transform> mapper = mapper();
+        for (int i = 0, n = children.size(); i < n; i++) {
+            Transform child = mapper.getSafe(children.get(i), null);
+            if (child != null) child.invalidateWorldCache();
+        }
+    }
+
+    public boolean isWorldDirty() {
+        return worldDirty;
+    }
+
+    /**
+     * Marks the world bounds as changed without affecting the world matrices of the children.
+     * Called when the size changes. Marks the entity as changed, see {@link ChangeTracker}.
+     */
+    public void invalidateBounds() {
+        markChanged();
+        boundsChanged = true;
+    }
+
+    public void setBoundsChanged(boolean boundsChanged) {
+        this.boundsChanged = boundsChanged;
+    }
+
+    /**
+     * @return true if the world bounds changed since the last call of {@link #setBoundsChanged(boolean)} with false
+     */
+    public boolean boundsChanged() {
+        return boundsChanged;
+    }
+
+    /**
+     * @param out the rectangle to set
+     * @return the given rectangle set to the axis aligned world bounds (containing rotation and scale)
+     */
+    public Rectangle getWorldBounds(Rectangle out) {
+        validateWorld();
+        Affine2 m = worldTransform;
+        float x1 = m.m02, y1 = m.m12; // (0, 0)
+        float x2 = m.m00 * width + m.m02, y2 = m.m10 * width + m.m12; // (width, 0)
+        float x3 = m.m00 * width + m.m01 * height + m.m02, y3 = m.m10 * width + m.m11 * height + m.m12; // (width, height)
+        float x4 = m.m01 * height + m.m02, y4 = m.m11 * height + m.m12; // (0, height)
+        float minX = Math.min(Math.min(x1, x2), Math.min(x3, x4));
+        float minY = Math.min(Math.min(y1, y2), Math.min(y3, y4));
+        float maxX = Math.max(Math.max(x1, x2), Math.max(x3, x4));
+        float maxY = Math.max(Math.max(y1, y2), Math.max(y3, y4));
+        return out.set(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /**
+     * @return the cached world x coordinate of the bottom left corner
+     */
+    public float getWorldX() {
+        validateWorld();
+        return worldTransform.m02;
+    }
+
+    /**
+     * @return the cached world y coordinate of the bottom left corner
+     */
+    public float getWorldY() {
+        validateWorld();
+        return worldTransform.m12;
+    }
+
+    /**
+     * @return the given vector set to the cached world position of the bottom left corner
+     */
+    public Vector2 getWorldPosition(Vector2 pos) {
+        validateWorld();
+        return pos.set(worldTransform.m02, worldTransform.m12);
+    }
+
+    /**
+     * The cached local to world matrix. Recalculated if needed. Do not modify.
+     */
+    public Affine2 getWorldTransform() {
+        validateWorld();
+        return worldTransform;
+    }
+
+    /**
+     * @param out the matrix to set
+     * @return the given matrix set to the local to parent matrix
+     */
+    public Affine2 computeLocalTransform(Affine2 out) {
+        if (rotation == 0 && scaleX == 1 && scaleY == 1) return out.setToTranslation(x, y);
+        return out.setToTrnRotScl(x + originX, y + originY, rotation, scaleX, scaleY)
+                .translate(-originX, -originY);
+    }
+
+    /**
+     * recalculates the world matrix (and the ones of dirty ancestors) if needed
+     */
+    private void validateWorld() {
+        if (!worldDirty) return;
+        computeLocalTransform(worldTransform);
+        Transform parent = getParent();
+        if (parent != null) {
+            parent.validateWorld();
+            worldTransform.preMul(parent.worldTransform);
+        }
+        worldInvertible = worldTransform.det() != 0;
+        if (worldInvertible) worldInverse.set(worldTransform).inv();
+        worldDirty = false;
     }
 
 
     // -- root -
     public boolean isRoot() {
-        return getRootEntity() == entity;
+        return parent == -1;
     }
     public Entity getRootEntity() {
-        Transform current = entity.getComponent(Transform.class);
-        while (current.parent != null) {
-            current = current.parent.getComponent(Transform.class);
-        }
-        return current.entity;
+        return getRoot().entity;
     }
     public Transform getRoot(){
-        return getRootEntity().getComponent(Transform.class);
+        ComponentMapper<Transform> mapper = mapper();
+        Transform current = this;
+        while (current.parent != -1) {
+            current = mapper.get(current.parent);
+        }
+        return current;
     }
 
 
@@ -580,14 +889,17 @@ public class Transform extends Script {
 
     /**
      * If a parent is present informs it to sort its children.
-     * If this transform {@link #isRoot()} (which always leads to it having a Canvas) it will be automatically called
-     * by the system
+     * If this transform {@link #isRoot()} (which always leads to it having a Canvas) the roots are resorted
+     * by the {@link com.sk.editor.ecs.systems.RootCanvasManager}
      * @param index
      */
     public void setIndex(int index) {
         this.index = index;
-        if(parent != null)
-            parent.getComponent(Transform.class).setChildrenChanged(true);
+        markChanged();
+        if(parent != -1)
+            mapper().get(parent).setChildrenChanged(true);
+        else if(hierarchy != null)
+            hierarchy.rootIndexChanged(entity.getId());
     }
 
     public int getIndex() {
@@ -600,28 +912,104 @@ public class Transform extends Script {
     protected void reset() {
         bounds.set(0, 0, 0, 0);
         tmp.setZero();
+        worldTransform.idt();
+        worldInverse.idt();
+        worldInvertible = true;
+        worldDirty = true;
+        boundsChanged = true;
 
         children.clear();
-        parent = null;
+        parent = -1;
         entity = null;
+        mapper = null;
+        hierarchy = null;
+        changes = null;
 
 
         x = 0;
         y = 0;
         width = 0;
         height = 0;
+        originX = 0;
+        originY = 0;
+        scaleX = 1;
+        scaleY = 1;
+        rotation = 0;
         name = "unnamed";
 
         index = 0;
         childrenChanged = false;
     }
 
-    public static class TransformComparator implements Comparator<Entity> {
+    private void notifyParentChanged(int oldParentId) {
+        if (oldParentId == parent) return;
+        // the children of both parents changed
+        if (changes != null) {
+            if (oldParentId != -1) changes.markChanged(oldParentId);
+            if (parent != -1) changes.markChanged(parent);
+        }
+        if (hierarchy != null) hierarchy.parentChanged(entity.getId(), oldParentId);
+    }
+
+    /**
+     * informs the {@link ChangeTracker} that the serialized data of this transform changed
+     */
+    private void markChanged() {
+        if (changes != null && entity != null) changes.markChanged(entity.getId());
+    }
+
+    // -- mapper --
+
+    private ComponentMapper<Transform> mapper() {
+        if (mapper == null) mapper = entity.getWorld().getMapper(Transform.class);
+        return mapper;
+    }
+
+    /**
+     * Writes and reads the fields directly instead of libGDX' reflective field walk. Uses the same keys as the
+     * reflective format, so both can read each others output. The children go through the artemis
+     * {@link IntBag} serializer like in the reflective format.
+     */
+    public static class JsonCodec implements JsonComponentCodec<Transform> {
+
+        @Override
+        public void write(Json json, Transform object) {
+            json.writeValue("init", object.isInit());
+            json.writeValue("name", object.name);
+            json.writeValue("parent", object.parent);
+            json.writeValue("children", object.children, IntBag.class);
+            json.writeValue("x", object.x);
+            json.writeValue("y", object.y);
+            json.writeValue("width", object.width);
+            json.writeValue("height", object.height);
+            json.writeValue("originX", object.originX);
+            json.writeValue("originY", object.originY);
+            json.writeValue("scaleX", object.scaleX);
+            json.writeValue("scaleY", object.scaleY);
+            json.writeValue("rotation", object.rotation);
+            json.writeValue("index", object.index);
+            json.writeValue("childrenChanged", object.childrenChanged);
+        }
+
         @Override
-        public int compare(Entity o1, Entity o2) {
-            Transform t1 = o1.getComponent(Transform.class);
-            Transform t2 = o2.getComponent(Transform.class);
-            return t1.index - t2.index;
+        public void read(Json json, JsonValue jsonData, Transform transform) {
+            transform.setInit(jsonData.getBoolean("init", false));
+            transform.name = jsonData.getString("name", "unnamed");
+            transform.parent = jsonData.getInt("parent", -1);
+            IntBag children = json.readValue("children", IntBag.class, jsonData);
+            transform.children.clear();
+            if (children != null) transform.children.addAll(children);
+            transform.x = jsonData.getFloat("x", 0);
+            transform.y = jsonData.getFloat("y", 0);
+            transform.width = jsonData.getFloat("width", 0);
+            transform.height = jsonData.getFloat("height", 0);
+            transform.originX = jsonData.getFloat("originX", 0);
+            transform.originY = jsonData.getFloat("originY", 0);
+            transform.scaleX = jsonData.getFloat("scaleX", 1);
+            transform.scaleY = jsonData.getFloat("scaleY", 1);
+            transform.rotation = jsonData.getFloat("rotation", 0);
+            transform.index = jsonData.getInt("index", 0);
+            transform.childrenChanged = jsonData.getBoolean("childrenChanged", false);
         }
     }
 }
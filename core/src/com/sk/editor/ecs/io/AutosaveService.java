@@ -0,0 +1,532 @@
+package com.sk.editor.ecs.io;
+
+import com.artemis.Aspect;
+import com.artemis.ComponentMapper;
+import com.artemis.EntitySubscription;
+import com.artemis.World;
+import com.artemis.utils.IntBag;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntIntMap;
+import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.IntSet;
+import com.badlogic.gdx.utils.Logger;
+import com.badlogic.gdx.utils.Null;
+import com.sk.editor.EditorManager;
+import com.sk.editor.ecs.components.Transform;
+import com.sk.editor.ecs.systems.ChangeTracker;
+import com.sk.editor.ui.logger.EditorLogger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Saves the world as chunked scene (see {@link SceneFiles}) without blocking the GL thread:
+ * <ul>
+ *     <li>on the GL thread only the entities changed since the last save are copied to
+ *     {@link BinaryWorldSerializer.EntitySnapshot}s, the others reuse their previous snapshot. Changed entities are
+ *     reported by the {@link ChangeTracker} and on insertion, the members of each root are kept up to date
+ *     incrementally. So a save does not depend on the size of the world</li>
+ *     <li>edits the tracker does not see (i.e. fields written directly) are found by a periodic full comparison of
+ *     all entities with their snapshots, see {@link #setFullDiffInterval(float)}</li>
+ *     <li>only the chunks of roots with a changed, added, removed or reparented entity are written</li>
+ *     <li>encoding and writing happen on a background thread. Each file is written atomically, the manifest last</li>
+ *     <li>only one save is in flight. Saves requested meanwhile are postponed until it is done</li>
+ *     <li>in idle rendering mode no frames are rendered without input, so a frame is requested when the interval
+ *     elapses with unsaved changes or a postponed save can be retried</li>
+ * </ul>
+ * Entity references between different chunks are written as the scene id of the target, see {@link EntityReferences}.
+ * {@link #update(float)} has to be called once per frame on the GL thread.
+ */
+public class AutosaveService implements Disposable {
+
+    private static final EditorLogger log = new EditorLogger(AutosaveService.class.toString(), Logger.DEBUG);
+
+    /**
+     * the root of entities without transform
+     */
+    private static final int LOOSE = -1;
+    private static final int NONE = -2;
+    /**
+     * the wake-up delay while a save is in flight
+     */
+    private static final long WRITING_POLL_MILLIS = 100;
+
+    private final BinaryWorldSerializer serializer;
+    private final Supplier<Path> directory;
+    private final EntitySubscription subscription;
+    private final ComponentMapper<Transform> transformMapper;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Autosave");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * by entity id: the snapshot of the last save
+     */
+    private final IntMap<BinaryWorldSerializer.EntitySnapshot> snapshots = new IntMap<>();
+    /**
+     * by entity id: the root the entity has been saved with
+     */
+    private final IntIntMap savedRoots = new IntIntMap();
+    /**
+     * by entity id: the id other chunks reference the entity by, kept for the lifetime of the entity
+     */
+    private final IntIntMap sceneIds = new IntIntMap();
+    /**
+     * by root id: the chunk file name
+     */
+    private final IntMap<String> chunkNames = new IntMap<>();
+    private final IntSet dirtyRoots = new IntSet();
+    /**
+     * entities to compare with their snapshot on the next save
+     */
+    private final IntSet changedEntities = new IntSet();
+    private final IntSet pinnedRoots = new IntSet();
+    /**
+     * chunks that could not be loaded, kept as they are
+     */
+    private final Array<SceneFiles.ChunkInfo> retainedChunks = new Array<>();
+    /**
+     * by root id: the ids of the entities saved with the root, including itself
+     */
+    private final IntMap<IntSet> members = new IntMap<>();
+    private final IntArray tmpIds = new IntArray();
+    private final IntArray tmpReferences = new IntArray();
+    private int nextChunkNumber;
+    private int nextSceneId;
+
+    private @Null Future<?> writing;
+    private @Null ScheduledFuture<?> wakeUp;
+    private volatile boolean saveRequested;
+    /**
+     * set if a save was due while another one was in flight, the save in flight requests a frame when done
+     */
+    private volatile boolean savePostponed;
+    /**
+     * set by the background thread, the next save writes all chunks
+     */
+    private volatile boolean writeFailed;
+
+    private float interval;
+    private float timer;
+    private float fullDiffInterval;
+    private float fullDiffTimer;
+    private boolean suspended;
+
+    /**
+     * @param directory supplies the scene directory on each save
+     * @param interval in seconds. See {@link #setInterval(float)}
+     */
+    public AutosaveService(World world, BinaryWorldSerializer serializer, Supplier<Path> directory, float interval) {
+        this.serializer = serializer;
+        this.directory = directory;
+        this.interval = interval;
+        this.transformMapper = world.getMapper(Transform.class);
+        world.getSystem(ChangeTracker.class).addListener(changedEntities::add);
+
+        subscription = world.getAspectSubscriptionManager().get(Aspect.all());
+        subscription.addSubscriptionListener(new EntitySubscription.SubscriptionListener() {
+            @Override
+            public void inserted(IntBag entities) {
+                // loaded chunks already registered their snapshots
+                for (int i = 0, n = entities.size(); i < n; i++) {
+                    if (!snapshots.containsKey(entities.get(i))) changedEntities.add(entities.get(i));
+                }
+            }
+
+            @Override
+            public void removed(IntBag entities) {
+                for (int i = 0, n = entities.size(); i < n; i++) {
+                    int id = entities.get(i);
+                    snapshots.remove(id);
+                    sceneIds.remove(id, -1);
+                    pinnedRoots.remove(id);
+                    changedEntities.remove(id);
+                    int root = savedRoots.remove(id, NONE);
+                    if (root != NONE) {
+                        members.get(root).remove(id);
+                        dirtyRoots.add(root);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Saves if the interval elapsed or a save has been requested and no save is in flight.
+     * Has to be called on the GL thread.
+     */
+    public void update(float delta) {
+        timer += delta;
+        fullDiffTimer += delta;
+        if (suspended) return;
+        if (saveRequested || (interval > 0 && timer >= interval)) trySave(saveRequested);
+        scheduleWakeUp();
+    }
+
+    /**
+     * Requests a save on the next {@link #update(float)}. Writes at least the manifest even if nothing changed.
+     * Postponed while another save is in flight.
+     */
+    public void save() {
+        saveRequested = true;
+        EditorManager.requestRendering();
+    }
+
+    /**
+     * Continues the scene ids of the loaded manifest, so ids of chunks not loaded are not reused.
+     */
+    public void manifestLoaded(SceneFiles.Manifest manifest) {
+        nextSceneId = Math.max(nextSceneId, manifest.nextSceneId);
+    }
+
+    /**
+     * Registers a chunk read from the scene directory so it is not written again unless it changes.
+     *
+     * @param entities the loaded entities, root first
+     * @param decoded the chunk the entities have been created from
+     */
+    public void chunkLoaded(SceneFiles.ChunkInfo chunk, IntBag entities, BinaryWorldSerializer.DecodedChunk decoded) throws IOException {
+        if (entities.isEmpty()) return;
+        int root = rootOf(entities.get(0));
+        chunkNames.put(root, chunk.name);
+        if (chunk.pinned) pinnedRoots.add(root);
+        nextChunkNumber = Math.max(nextChunkNumber, SceneFiles.chunkNumber(chunk.name) + 1);
+        for (int i = 0, n = entities.size(); i < n; i++) {
+            int id = entities.get(i);
+            int sceneId = decoded.getSceneId(i);
+            sceneIds.put(id, sceneId);
+            nextSceneId = Math.max(nextSceneId, sceneId + 1);
+            snapshots.put(id, serializer.snapshot(id, sceneId));
+            moveToRoot(id, root);
+        }
+    }
+
+    /**
+     * Takes new snapshots of loaded entities whose references to other chunks have been set, see
+     * {@link EntityReferences#resolve(IntBag)}. Their chunks do not change.
+     */
+    public void referencesResolved(IntBag entities) throws IOException {
+        for (int i = 0, n = entities.size(); i < n; i++) {
+            int id = entities.get(i);
+            if (snapshots.containsKey(id)) snapshots.put(id, serializer.snapshot(id, sceneIds.get(id, -1)));
+        }
+    }
+
+    /**
+     * Keeps the chunk in the manifest and on disk, i.e. if it could not be loaded.
+     */
+    public void retainChunk(SceneFiles.ChunkInfo chunk) {
+        retainedChunks.add(chunk);
+        nextChunkNumber = Math.max(nextChunkNumber, SceneFiles.chunkNumber(chunk.name) + 1);
+    }
+
+    /**
+     * @param pinned if true the chunk of the root is loaded before the editor becomes interactive,
+     *               see {@link SceneStreamer}
+     */
+    public void setPinned(int rootId, boolean pinned) {
+        if (pinned ? pinnedRoots.add(rootId) : pinnedRoots.remove(rootId)) dirtyRoots.add(rootId);
+    }
+
+    public boolean isPinned(int rootId) {
+        return pinnedRoots.contains(rootId);
+    }
+
+    /**
+     * @param suspended if true no saves happen, requested ones are postponed
+     */
+    public void setSuspended(boolean suspended) {
+        this.suspended = suspended;
+    }
+
+    public boolean isSuspended() {
+        return suspended;
+    }
+
+    /**
+     * @return true if a save is being written
+     */
+    public boolean isWriting() {
+        return writing != null && !writing.isDone();
+    }
+
+    /**
+     * @param interval in seconds between automatic saves, 0 or less to only save on {@link #save()}
+     */
+    public void setInterval(float interval) {
+        this.interval = interval;
+    }
+
+    public float getInterval() {
+        return interval;
+    }
+
+    /**
+     * @param fullDiffInterval in seconds between saves comparing all entities with their snapshots instead of only
+     *                         the changed ones, 0 or less to never do so
+     */
+    public void setFullDiffInterval(float fullDiffInterval) {
+        this.fullDiffInterval = fullDiffInterval;
+    }
+
+    public float getFullDiffInterval() {
+        return fullDiffInterval;
+    }
+
+    /**
+     * waits for the save in flight
+     */
+    @Override
+    public void dispose() {
+        if (wakeUp != null) wakeUp.cancel(false);
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) log.error("Autosave did not finish.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // -- private --
+
+    private void trySave(boolean force) {
+        if (isWriting()) { // back pressure: retried once the save in flight is done
+            savePostponed = true;
+            return;
+        }
+        savePostponed = false;
+        timer = 0;
+
+        SaveJob job;
+        try {
+            updateSnapshots();
+            if (writeFailed) {
+                writeFailed = false;
+                for (IntMap.Entry<IntSet> entry : members.entries()) dirtyRoots.add(entry.key);
+            }
+            if (dirtyRoots.size == 0 && !force) return;
+            job = createJob();
+        } catch (IOException e) {
+            log.error("Snapshot failed.", e);
+            saveRequested = false;
+            return;
+        }
+        saveRequested = false;
+        writing = executor.submit(job);
+    }
+
+    /**
+     * Requests a frame when the interval elapses while there are unsaved changes, since the timer only advances with
+     * rendered frames. One wake-up at a time. While a save is in flight it polls, in case the save finished before
+     * a postponed save had been flagged.
+     */
+    private void scheduleWakeUp() {
+        if (suspended || interval <= 0 || (changedEntities.size == 0 && dirtyRoots.size == 0)) return;
+        if (wakeUp != null && !wakeUp.isDone()) return;
+        long delay = isWriting() ? WRITING_POLL_MILLIS : (long) (Math.max(0, interval - timer) * 1000);
+        wakeUp = executor.schedule(EditorManager::requestRendering, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * takes the snapshots of changed entities and moves them to their current root
+     */
+    private void updateSnapshots() throws IOException {
+        if (fullDiffInterval > 0 && fullDiffTimer >= fullDiffInterval) {
+            fullDiffTimer = 0;
+            IntBag entities = subscription.getEntities();
+            for (int i = 0, n = entities.size(); i < n; i++) changedEntities.add(entities.get(i));
+        }
+
+        IntSet.IntSetIterator changed = changedEntities.iterator();
+        while (changed.hasNext) {
+            int id = changed.next();
+            if (!subscription.getActiveEntityIds().unsafeGet(id)) continue; // removed meanwhile
+            updateRoot(id);
+
+            // snapshots are replaced, never modified, as they might be encoded right now
+            BinaryWorldSerializer.EntitySnapshot snapshot = snapshots.get(id);
+            if (snapshot == null || !serializer.isUpToDate(snapshot)) {
+                snapshots.put(id, serializer.snapshot(id, getSceneId(id)));
+                dirtyRoots.add(savedRoots.get(id, NONE));
+            }
+        }
+        changedEntities.clear();
+    }
+
+    /**
+     * moves the entity and its descendants to its current root if it changed, both chunks change
+     */
+    private void updateRoot(int entityId) {
+        int root = rootOf(entityId);
+        if (savedRoots.get(entityId, NONE) == root) return; // descendants moved with it
+        moveToRoot(entityId, root);
+
+        Transform transform = transformMapper.getSafe(entityId, null);
+        if (transform == null) return;
+        IntBag children = transform.children;
+        for (int i = 0, n = children.size(); i < n; i++) updateRoot(children.get(i));
+    }
+
+    private void moveToRoot(int entityId, int root) {
+        int savedRoot = savedRoots.put(entityId, root, NONE);
+        if (savedRoot == root) return;
+        if (savedRoot != NONE) {
+            members.get(savedRoot).remove(entityId);
+            dirtyRoots.add(savedRoot);
+        }
+        IntSet rootMembers = members.get(root);
+        if (rootMembers == null) members.put(root, rootMembers = new IntSet());
+        rootMembers.add(entityId);
+        dirtyRoots.add(root);
+    }
+
+    private SaveJob createJob() {
+        SaveJob job = new SaveJob();
+        job.directory = directory.get();
+
+        // chunks of dirty roots, root first
+        IntSet.IntSetIterator dirty = dirtyRoots.iterator();
+        while (dirty.hasNext) {
+            int root = dirty.next();
+            IntSet rootMembers = members.get(root);
+            if (rootMembers == null || rootMembers.isEmpty()) continue; // removed
+
+            // sorted so unchanged chunks are written the same
+            tmpIds.clear();
+            IntSet.IntSetIterator ids = rootMembers.iterator();
+            while (ids.hasNext) tmpIds.add(ids.next());
+            tmpIds.sort();
+            Array<BinaryWorldSerializer.EntitySnapshot> chunk = new Array<>(tmpIds.size);
+            if (root != LOOSE) chunk.add(snapshots.get(root));
+            for (int i = 0, n = tmpIds.size; i < n; i++) {
+                if (tmpIds.get(i) != root) chunk.add(snapshots.get(tmpIds.get(i)));
+            }
+
+            // scene ids of the referenced entities, those of other chunks are written instead of the local index
+            for (BinaryWorldSerializer.EntitySnapshot snapshot : chunk) {
+                tmpReferences.clear();
+                serializer.getReferences(snapshot, tmpReferences);
+                for (int i = 0; i < tmpReferences.size; i++) {
+                    int sceneId = sceneIds.get(tmpReferences.get(i), -1);
+                    if (sceneId != -1) job.sceneIds.put(tmpReferences.get(i), sceneId);
+                }
+            }
+            job.names.add(getChunkName(root));
+            job.chunks.add(chunk);
+        }
+        dirtyRoots.clear();
+
+        // chunks of roots without members are deleted after the manifest has been written
+        IntBag obsolete = new IntBag();
+        IntMap.Keys roots = chunkNames.keys();
+        while (roots.hasNext) {
+            int root = roots.next();
+            IntSet rootMembers = members.get(root);
+            if (rootMembers == null || rootMembers.isEmpty()) obsolete.add(root);
+        }
+        for (int i = 0; i < obsolete.size(); i++) job.obsolete.add(chunkNames.remove(obsolete.get(i)));
+
+        IntMap.Entries<IntSet> entries = members.entries();
+        while (entries.hasNext) {
+            IntMap.Entry<IntSet> entry = entries.next();
+            if (entry.value.isEmpty()) {
+                entries.remove();
+                continue;
+            }
+            SceneFiles.ChunkInfo chunk = new SceneFiles.ChunkInfo();
+            chunk.name = getChunkName(entry.key);
+            chunk.entityCount = entry.value.size;
+            if (entry.key != LOOSE) {
+                Transform root = transformMapper.get(entry.key);
+                chunk.rootName = root.getName();
+                chunk.rootIndex = root.getIndex();
+                chunk.pinned = pinnedRoots.contains(entry.key);
+            }
+            job.manifest.chunks.add(chunk);
+        }
+        job.manifest.chunks.addAll(retainedChunks);
+        job.manifest.chunks.sort((a, b) -> Integer.compare(a.rootIndex, b.rootIndex)); // loaded in root order
+        job.manifest.nextSceneId = nextSceneId;
+        return job;
+    }
+
+    private String getChunkName(int root) {
+        String name = chunkNames.get(root);
+        if (name == null) {
+            name = root == LOOSE ? SceneFiles.LOOSE_CHUNK_NAME : SceneFiles.chunkName(nextChunkNumber++);
+            chunkNames.put(root, name);
+        }
+        return name;
+    }
+
+    private int getSceneId(int entityId) {
+        int sceneId = sceneIds.get(entityId, -1);
+        if (sceneId == -1) sceneIds.put(entityId, sceneId = nextSceneId++);
+        return sceneId;
+    }
+
+    private int rootOf(int entityId) {
+        Transform transform = transformMapper.getSafe(entityId, null);
+        if (transform == null) return LOOSE;
+        int root = entityId;
+        while (transform.parent != -1) {
+            root = transform.parent;
+            transform = transformMapper.get(root);
+        }
+        return root;
+    }
+
+    /**
+     * the data of one save, written on the background thread
+     */
+    private class SaveJob implements Runnable {
+        Path directory;
+        final Array<String> names = new Array<>(), obsolete = new Array<>();
+        final SceneFiles.Manifest manifest = new SceneFiles.Manifest();
+        final Array<Array<BinaryWorldSerializer.EntitySnapshot>> chunks = new Array<>();
+        /**
+         * by entity id: the scene ids of the entities referenced by the chunks
+         */
+        final IntIntMap sceneIds = new IntIntMap();
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                for (int i = 0; i < chunks.size; i++) {
+                    Array<BinaryWorldSerializer.EntitySnapshot> chunk = chunks.get(i);
+                    SceneFiles.writeAtomically(directory.resolve(names.get(i)), channel -> serializer.write(chunk, sceneIds, channel));
+                }
+                SceneFiles.writeManifest(directory, manifest);
+                for (String name : obsolete) {
+                    if (!isInManifest(name)) Files.deleteIfExists(directory.resolve(name));
+                }
+                log.debug("Saved " + chunks.size + " of " + manifest.chunks.size + " chunks in "
+                        + (System.nanoTime() - start) / 1000000 + "ms.");
+            } catch (IOException e) {
+                log.error("Saving failed.", e);
+                writeFailed = true;
+            }
+
+            // postponed saves need a frame in idle rendering mode
+            if (saveRequested || savePostponed) Gdx.app.postRunnable(EditorManager::requestRendering);
+        }
+
+        private boolean isInManifest(String name) {
+            for (SceneFiles.ChunkInfo chunk : manifest.chunks) if (chunk.name.equals(name)) return true;
+            return false;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.sk.editor.ecs.io;
+
+import com.badlogic.gdx.utils.Array;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads what the {@link BinaryWriter} wrote from a channel through a fixed size buffer, so the whole file is
+ * never held in memory.
+ */
+public class BinaryReader {
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private String[] strings = new String[0];
+    private final Array<Object> shared = new Array<>();
+    private byte[] tmp = new byte[64];
+
+    public BinaryReader(ReadableByteChannel channel) {
+        this(channel, 1 << 16);
+    }
+
+    public BinaryReader(ReadableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, 16)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip(); // empty
+    }
+
+    // -- primitives --
+
+    public int readByte() throws IOException {
+        require(1);
+        return buffer.get() & 0xff;
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint.");
+    }
+
+    public int readSignedVarInt() throws IOException {
+        int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return (value >>> 1) ^ -(value & 1);
+        }
+        throw new IOException("Malformed varlong.");
+    }
+
+    public int readInt() throws IOException {
+        require(4);
+        return buffer.getInt();
+    }
+
+    public float readFloat() throws IOException {
+        require(4);
+        return buffer.getFloat();
+    }
+
+    public double readDouble() throws IOException {
+        require(8);
+        return buffer.getDouble();
+    }
+
+    public String readString() throws IOException {
+        int length = readVarInt();
+        if (tmp.length < length) tmp = new byte[Math.max(length, tmp.length * 2)];
+        readBytes(tmp, 0, length);
+        return new String(tmp, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return Maybe null. The string of the string table
+     */
+    public String readStringRef() throws IOException {
+        int index = readVarInt();
+        if (index == 0) return null;
+        if (index > strings.length) throw new IOException("Invalid string reference " + index + ".");
+        return strings[index - 1];
+    }
+
+    /**
+     * Reads a reference written by {@link BinaryWriter#writeSharedRef(Object)}.
+     *
+     * @return -1 for null, otherwise the index of the value. If it equals {@link #getSharedCount()} the
+     * definition follows and the value has to be registered via {@link #addShared(Object)}
+     */
+    public int readSharedRef() throws IOException {
+        int index = readVarInt() - 1;
+        if (index > shared.size) throw new IOException("Invalid shared reference " + index + ".");
+        return index;
+    }
+
+    public int getSharedCount() {
+        return shared.size;
+    }
+
+    public Object getShared(int index) {
+        return shared.get(index);
+    }
+
+    public void addShared(Object value) {
+        shared.add(value);
+    }
+
+    /**
+     * starts a new scope, see {@link BinaryWriter#clearShared()}
+     */
+    public void clearShared() {
+        shared.clear();
+    }
+
+    public void readBytes(byte[] dst, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!buffer.hasRemaining()) require(1);
+            int n = Math.min(length, buffer.remaining());
+            buffer.get(dst, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    public void skip(int length) throws IOException {
+        while (length > 0) {
+            if (!buffer.hasRemaining()) require(1);
+            int n = Math.min(length, buffer.remaining());
+            buffer.position(buffer.position() + n);
+            length -= n;
+        }
+    }
+
+    // -- strings --
+
+    /**
+     * reads the string table written by {@link BinaryWorldSerializer}: count followed by inline strings
+     */
+    public void readStringTable() throws IOException {
+        int count = readVarInt();
+        strings = new String[count];
+        for (int i = 0; i < count; i++) strings[i] = readString();
+    }
+
+    // -- private --
+
+    /**
+     * refills the buffer until the amount of bytes is available
+     */
+    private void require(int amount) throws IOException {
+        if (buffer.remaining() >= amount) return;
+        buffer.compact();
+        while (buffer.position() < amount) {
+            if (channel.read(buffer) == -1) {
+                buffer.flip();
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+    }
+}
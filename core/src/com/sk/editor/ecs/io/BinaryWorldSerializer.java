@@ -0,0 +1,878 @@
+package com.sk.editor.ecs.io;
+
+import com.artemis.Component;
+import com.artemis.ComponentMapper;
+import com.artemis.Entity;
+import com.artemis.World;
+import com.artemis.annotations.EntityId;
+import com.artemis.utils.Bag;
+import com.artemis.utils.IntBag;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntIntMap;
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.JsonWriter;
+import com.badlogic.gdx.utils.Logger;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.sk.editor.ui.logger.EditorLogger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Saves and loads entities in a compact binary scene format:
+ * <pre>
+ * header        magic (int), version (varint)
+ * string table  count, utf-8 strings (component types, field names, names, asset paths)
+ * entities      count, per entity its scene id
+ * blocks        count, per component type: type name, byte length, field descriptors (name, kind),
+ *               row count, entity indices (delta encoded), one column of values per field
+ * </pre>
+ * Integers are zig zag varints, floats raw little endian. Loading streams through a fixed size buffer and creates
+ * the components column by column. Fields unknown to the current classes and blocks of unknown component types are
+ * skipped. Values of types without a {@link ValueCodec} fall back to json strings.
+ * <p>
+ * Entity references are stored as the index of the entity in the file, -1 for none or, for entities of another file of
+ * the same scene, {@code -2 - sceneId}. Those are set by {@link EntityReferences} once their target is loaded.
+ */
+public class BinaryWorldSerializer {
+
+    private static final EditorLogger log = new EditorLogger(BinaryWorldSerializer.class.toString(), Logger.DEBUG);
+
+    public static final int MAGIC = 0x534b5731; // SKW1
+    public static final int VERSION = 1;
+
+    // field kinds
+    static final int BOOLEAN = 0, INT = 1, LONG = 2, FLOAT = 3, DOUBLE = 4, STRING = 5, ENUM = 6,
+            ENTITY_ID = 7, ENTITY_ID_BAG = 8, ENTITY = 9, CODEC = 10, JSON = 11;
+
+    private final World world;
+    private final ObjectMap<Class<?>, ValueCodec<?>> codecs = new ObjectMap<>();
+    private final ObjectMap<String, ValueCodec<?>> codecsByName = new ObjectMap<>();
+    private final ObjectMap<Class<?>, Schema> schemas = new ObjectMap<>();
+    private final Json json = new Json(JsonWriter.OutputType.minimal);
+    private final Bag<Component> tmpComponents = new Bag<>();
+
+    public BinaryWorldSerializer(World world) {
+        this.world = world;
+        json.setIgnoreUnknownFields(true);
+    }
+
+    public <T> void register(Class<T> type, ValueCodec<T> codec) {
+        codecs.put(type, codec);
+        codecsByName.put(type.getName(), codec);
+        synchronized (this) {
+            schemas.clear(); // field kinds might change
+        }
+    }
+
+    /**
+     * The json serializer used for values without codec
+     */
+    public Json getJson() {
+        return json;
+    }
+
+    // -- save --
+
+    /**
+     * Writes the entities and all their components to the channel, the index of each entity is its scene id.
+     * References to entities not contained are written as none.
+     */
+    public void save(IntBag entities, WritableByteChannel channel) throws IOException {
+        Array<EntitySnapshot> snapshots = new Array<>(entities.size());
+        for (int i = 0, n = entities.size(); i < n; i++) snapshots.add(snapshot(entities.get(i), i));
+        write(snapshots, new IntIntMap(0), channel);
+    }
+
+    /**
+     * Copies the component data of the entity. Has to be called on the thread processing the world.
+     * Values of registered {@link ValueCodec}s are referenced, not copied, so those should be replaced rather than
+     * modified (i.e. asset regions).
+     *
+     * @param sceneId the id the entity is referenced by from other files of the scene, see {@link EntityReferences}
+     */
+    public EntitySnapshot snapshot(int entityId, int sceneId) throws IOException {
+        return snapshot(entityId, sceneId, null);
+    }
+
+    /**
+     * @param filter Maybe null. The component types to copy, all if null
+     */
+    private EntitySnapshot snapshot(int entityId, int sceneId, Predicate<Class<?>> filter) throws IOException {
+        tmpComponents.clear();
+        world.getEntity(entityId).getComponents(tmpComponents);
+        if (filter != null) {
+            for (int i = tmpComponents.size() - 1; i >= 0; i--) {
+                if (!filter.test(tmpComponents.get(i).getClass())) tmpComponents.remove(i);
+            }
+        }
+
+        EntitySnapshot snapshot = new EntitySnapshot();
+        snapshot.entityId = entityId;
+        snapshot.sceneId = sceneId;
+        snapshot.schemas = new Schema[tmpComponents.size()];
+        snapshot.values = new Object[tmpComponents.size()][];
+        for (int i = 0, n = tmpComponents.size(); i < n; i++) {
+            Component component = tmpComponents.get(i);
+            Schema schema = getSchema(component.getClass());
+            Object[] values = new Object[schema.fields.length];
+            for (int f = 0; f < values.length; f++) values[f] = copyValue(schema.fields[f], schema.kinds[f], component);
+            snapshot.schemas[i] = schema;
+            snapshot.values[i] = values;
+        }
+        tmpComponents.clear();
+        return snapshot;
+    }
+
+    /**
+     * Compares the snapshot with the current components of its entity without copying.
+     * Has to be called on the thread processing the world.
+     *
+     * @return false if a component has been added, removed or changed since the snapshot
+     */
+    public boolean isUpToDate(EntitySnapshot snapshot) throws IOException {
+        tmpComponents.clear();
+        world.getEntity(snapshot.entityId).getComponents(tmpComponents);
+        try {
+            if (tmpComponents.size() != snapshot.schemas.length) return false;
+            for (int i = 0, n = tmpComponents.size(); i < n; i++) {
+                Component component = tmpComponents.get(i);
+                Schema schema = snapshot.schemas[i];
+                if (component.getClass() != schema.type) return false;
+                Object[] values = snapshot.values[i];
+                for (int f = 0; f < values.length; f++) {
+                    if (!isEqual(schema.fields[f], schema.kinds[f], component, values[f])) return false;
+                }
+            }
+            return true;
+        } finally {
+            tmpComponents.clear();
+        }
+    }
+
+    /**
+     * Adds the ids of the entities the snapshot references, including those of the same file.
+     *
+     * @return the given array
+     */
+    public IntArray getReferences(EntitySnapshot snapshot, IntArray out) {
+        for (int i = 0; i < snapshot.schemas.length; i++) {
+            int[] kinds = snapshot.schemas[i].kinds;
+            Object[] values = snapshot.values[i];
+            for (int f = 0; f < kinds.length; f++) {
+                if (kinds[f] == ENTITY_ID || kinds[f] == ENTITY) {
+                    int id = ((Number) values[f]).intValue();
+                    if (id != -1) out.add(id);
+                } else if (kinds[f] == ENTITY_ID_BAG) {
+                    out.addAll((int[]) values[f]);
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Encodes the snapshots. Does not access the world, so it can be called on any thread.
+     *
+     * @param sceneIds by entity id: the scene id of referenced entities without snapshot in this file, see
+     *                 {@link #getReferences(EntitySnapshot, IntArray)}. References to other entities are written as none
+     */
+    public void write(Array<EntitySnapshot> snapshots, IntIntMap sceneIds, WritableByteChannel channel) throws IOException {
+        BinaryWriter.StringTable strings = new BinaryWriter.StringTable();
+        BinaryWriter body = new BinaryWriter(strings, 1 << 16);
+        BinaryWriter block = new BinaryWriter(strings, 1 << 12);
+
+        // entity id -> index in file
+        int count = snapshots.size;
+        IntIntMap localIndices = new IntIntMap(count);
+        for (int i = 0; i < count; i++) localIndices.put(snapshots.get(i).entityId, i);
+
+        // rows (snapshot, component) by component type in order of first appearance
+        Array<Schema> types = new Array<>();
+        ObjectMap<Schema, IntArray> rows = new ObjectMap<>();
+        for (int i = 0; i < count; i++) {
+            Schema[] schemas = snapshots.get(i).schemas;
+            for (int j = 0; j < schemas.length; j++) {
+                IntArray typeRows = rows.get(schemas[j]);
+                if (typeRows == null) {
+                    rows.put(schemas[j], typeRows = new IntArray());
+                    types.add(schemas[j]);
+                }
+                typeRows.add(i, j);
+            }
+        }
+
+        body.writeVarInt(count);
+        for (int i = 0; i < count; i++) body.writeVarInt(snapshots.get(i).sceneId);
+        body.writeVarInt(types.size);
+        for (Schema schema : types) {
+            IntArray typeRows = rows.get(schema);
+            int rowCount = typeRows.size / 2;
+
+            block.clear();
+            block.clearShared(); // blocks of unknown types are skipped when loading
+            // field descriptors
+            block.writeVarInt(schema.fields.length);
+            for (int f = 0; f < schema.fields.length; f++) {
+                block.writeStringRef(schema.fields[f].getName());
+                block.writeByte(schema.kinds[f]);
+                if (schema.kinds[f] == CODEC) block.writeStringRef(schema.fields[f].getType().getName());
+            }
+
+            // rows
+            block.writeVarInt(rowCount);
+            for (int r = 0, previous = 0; r < rowCount; r++) {
+                int row = typeRows.get(r * 2);
+                block.writeVarInt(row - previous);
+                previous = row;
+            }
+
+            // columns
+            for (int f = 0; f < schema.fields.length; f++) {
+                for (int r = 0; r < rowCount; r++) {
+                    Object value = snapshots.get(typeRows.get(r * 2)).values[typeRows.get(r * 2 + 1)][f];
+                    writeValue(block, schema, f, value, localIndices, sceneIds);
+                }
+            }
+
+            body.writeStringRef(schema.type.getName());
+            body.writeVarInt(block.size());
+            body.write(block);
+        }
+
+        // header and string table are written first so loading can stream
+        BinaryWriter header = new BinaryWriter(null, 256 + strings.size() * 16);
+        header.writeInt(MAGIC);
+        header.writeVarInt(VERSION);
+        header.writeVarInt(strings.size());
+        for (int i = 0; i < strings.size(); i++) header.writeString(strings.get(i));
+
+        header.writeTo(channel);
+        body.writeTo(channel);
+    }
+
+    /**
+     * @return an immutable copy of the fields' value
+     */
+    private Object copyValue(Field field, int kind, Component component) throws IOException {
+        try {
+            switch (kind) {
+                case ENTITY_ID_BAG:
+                    IntBag bag = (IntBag) field.get(component);
+                    return bag == null ? new int[0] : Arrays.copyOf(bag.getData(), bag.size());
+                case ENTITY:
+                    Entity entity = (Entity) field.get(component);
+                    return entity == null ? -1 : entity.getId();
+                case JSON:
+                    Object object = field.get(component);
+                    return object == null ? null : json.toJson(object, field.getType());
+                default: // primitives are boxed, strings and enums are immutable
+                    return field.get(component);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IOException("Could not read field " + field, e);
+        }
+    }
+
+    private boolean isEqual(Field field, int kind, Component component, Object copy) throws IOException {
+        try {
+            switch (kind) {
+                case BOOLEAN:
+                    return field.getBoolean(component) == (Boolean) copy;
+                case INT:
+                case ENTITY_ID:
+                    return field.getInt(component) == ((Number) copy).intValue();
+                case LONG:
+                    return field.getLong(component) == (Long) copy;
+                case FLOAT: // bitwise to detect -0 and NaN changes
+                    return Float.floatToRawIntBits(field.getFloat(component)) == Float.floatToRawIntBits((Float) copy);
+                case DOUBLE:
+                    return Double.doubleToRawLongBits(field.getDouble(component)) == Double.doubleToRawLongBits((Double) copy);
+                case ENTITY_ID_BAG:
+                    IntBag bag = (IntBag) field.get(component);
+                    int[] ids = (int[]) copy;
+                    int size = bag == null ? 0 : bag.size();
+                    if (size != ids.length) return false;
+                    for (int i = 0; i < size; i++) if (bag.get(i) != ids[i]) return false;
+                    return true;
+                case ENTITY:
+                    Entity entity = (Entity) field.get(component);
+                    return (entity == null ? -1 : entity.getId()) == (Integer) copy;
+                case JSON:
+                    Object object = field.get(component);
+                    return Objects.equals(object == null ? null : json.toJson(object, field.getType()), copy);
+                case STRING:
+                    return Objects.equals(field.get(component), copy);
+                default: // enums and codec values by identity
+                    return field.get(component) == copy;
+            }
+        } catch (IllegalAccessException e) {
+            throw new IOException("Could not read field " + field, e);
+        }
+    }
+
+    private void writeValue(BinaryWriter out, Schema schema, int f, Object value, IntIntMap localIndices, IntIntMap sceneIds) {
+        switch (schema.kinds[f]) {
+            case BOOLEAN:
+                out.writeBoolean((Boolean) value);
+                break;
+            case INT:
+                out.writeSignedVarInt(((Number) value).intValue());
+                break;
+            case LONG:
+                out.writeVarLong((Long) value);
+                break;
+            case FLOAT:
+                out.writeFloat((Float) value);
+                break;
+            case DOUBLE:
+                out.writeDouble((Double) value);
+                break;
+            case STRING:
+            case JSON:
+                out.writeStringRef((String) value);
+                break;
+            case ENUM:
+                out.writeStringRef(value == null ? null : ((Enum<?>) value).name());
+                break;
+            case ENTITY_ID:
+            case ENTITY:
+                out.writeSignedVarInt(toReference((Integer) value, localIndices, sceneIds));
+                break;
+            case ENTITY_ID_BAG:
+                int[] ids = (int[]) value;
+                out.writeVarInt(ids.length);
+                for (int id : ids) out.writeSignedVarInt(toReference(id, localIndices, sceneIds));
+                break;
+            case CODEC:
+                out.writeBoolean(value != null);
+                if (value != null) ((ValueCodec<Object>) schema.codecs[f]).write(out, value);
+                break;
+        }
+    }
+
+    private int toReference(int entityId, IntIntMap localIndices, IntIntMap sceneIds) {
+        int localIndex = localIndices.get(entityId, -1);
+        if (localIndex != -1 || entityId == -1) return localIndex;
+        int sceneId = sceneIds.get(entityId, -1);
+        return sceneId == -1 ? -1 : EntityReferences.toExternal(sceneId);
+    }
+
+    // -- load --
+
+    /**
+     * Creates the entities of the channels' content. Same as {@link #commit(DecodedChunk, IntBag, EntityReferences)}
+     * of {@link #decode(ReadableByteChannel)}, references to entities of other files are dropped.
+     *
+     * @param out the bag to add the ids of the created entities to, in file order
+     * @return the given bag
+     */
+    public IntBag load(ReadableByteChannel channel, IntBag out) throws IOException {
+        EntityReferences references = createReferences();
+        commit(decode(channel), out, references);
+        references.clear();
+        return out;
+    }
+
+    /**
+     * @return the references of one scene, shared by the commits of its files
+     */
+    public EntityReferences createReferences() {
+        return new EntityReferences(world);
+    }
+
+    /**
+     * Reads the channels' content without accessing the world, so it can be called on any thread.
+     * Component types are resolved with the context class loader of the calling thread and registered
+     * {@link ValueCodec}s have to support concurrent reads. Json values are parsed on commit.
+     */
+    public DecodedChunk decode(ReadableByteChannel channel) throws IOException {
+        BinaryReader in = new BinaryReader(channel);
+        if (in.readInt() != MAGIC) throw new IOException("Not a binary scene file.");
+        int version = in.readVarInt();
+        if (version != VERSION) throw new IOException("Unsupported scene version " + version + ".");
+        in.readStringTable();
+
+        DecodedChunk chunk = new DecodedChunk();
+        chunk.sceneIds = new int[in.readVarInt()];
+        for (int i = 0; i < chunk.sceneIds.length; i++) chunk.sceneIds[i] = in.readVarInt();
+        int blockCount = in.readVarInt();
+        for (int b = 0; b < blockCount; b++) {
+            String typeName = in.readStringRef();
+            int length = in.readVarInt();
+            Class<? extends Component> type = resolve(typeName);
+            if (type == null) {
+                log.error("Skipping unknown component type " + typeName + ".");
+                in.skip(length);
+                continue;
+            }
+            chunk.blocks.add(decodeBlock(in, type));
+        }
+        return chunk;
+    }
+
+    /**
+     * Creates the entities of the decoded chunk. Has to be called on the thread processing the world.
+     * References to entities of other files are added to the references and set on {@link EntityReferences#resolve(IntBag)}.
+     *
+     * @param out the bag to add the ids of the created entities to, in file order
+     * @return the given bag
+     */
+    public IntBag commit(DecodedChunk chunk, IntBag out, EntityReferences references) throws IOException {
+        int[] ids = new int[chunk.sceneIds.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = world.create();
+            references.register(chunk.sceneIds[i], ids[i]);
+            out.add(ids[i]);
+        }
+        commit(chunk, ids, references);
+        return out;
+    }
+
+    /**
+     * creates the components of the chunk for the given entities
+     *
+     * @param ids by index in the chunk: the entity id
+     */
+    private void commit(DecodedChunk chunk, int[] ids, EntityReferences references) throws IOException {
+        for (DecodedBlock block : chunk.blocks) {
+            ComponentMapper<? extends Component> mapper = world.getMapper(block.type);
+            Component[] components = new Component[block.rows.length];
+            for (int r = 0; r < components.length; r++) components[r] = mapper.create(ids[block.rows[r]]);
+
+            for (int f = 0; f < block.targets.length; f++) {
+                if (block.targets[f] != null) {
+                    applyColumn(block.targets[f], block.kinds[f], block.columns[f], components, ids);
+                    addExternal(block, f, components, ids, references);
+                }
+            }
+        }
+    }
+
+    // -- reload --
+
+    /**
+     * Recreates the components of the entities whose type is stale with the class of the same name of the context
+     * class loader, i.e. after the scripts have been reloaded. The values are kept by field name like loading a file,
+     * components whose type does not exist anymore are removed. Has to be called on the thread processing the world.
+     *
+     * @param stale true for the component types to recreate
+     * @param out   the bag to add the ids of the entities with recreated components to
+     * @return the given bag
+     */
+    public IntBag reloadComponents(IntBag entities, Predicate<Class<?>> stale, IntBag out) throws IOException {
+        Array<EntitySnapshot> snapshots = new Array<>();
+        IntIntMap sceneIds = new IntIntMap(); // referenced entities keep their id
+        IntArray references = new IntArray();
+        for (int i = 0, n = entities.size(); i < n; i++) {
+            int id = entities.get(i);
+            EntitySnapshot snapshot = snapshot(id, id, stale);
+            if (snapshot.schemas.length == 0) continue;
+            snapshots.add(snapshot);
+            references.clear();
+            getReferences(snapshot, references);
+            for (int r = 0; r < references.size; r++) sceneIds.put(references.get(r), references.get(r));
+        }
+        if (snapshots.isEmpty()) return out;
+
+        // encoded with the stale classes, which are removed afterwards
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        write(snapshots, sceneIds, Channels.newChannel(bytes));
+        int[] ids = new int[snapshots.size];
+        for (int i = 0; i < ids.length; i++) {
+            EntitySnapshot snapshot = snapshots.get(i);
+            ids[i] = snapshot.entityId;
+            for (Schema schema : snapshot.schemas) {
+                world.getMapper((Class<? extends Component>) schema.type).remove(ids[i]);
+                synchronized (this) {
+                    schemas.remove(schema.type); // releases the former class loader
+                }
+            }
+            out.add(ids[i]);
+        }
+
+        // decoded with the current classes onto the same entities
+        DecodedChunk chunk = decode(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+        EntityReferences entityReferences = createReferences();
+        IntIntMap.Keys keys = sceneIds.keys();
+        while (keys.hasNext) {
+            int id = keys.next();
+            entityReferences.register(id, id);
+        }
+        commit(chunk, ids, entityReferences);
+        entityReferences.resolve(new IntBag());
+        entityReferences.clear();
+        return out;
+    }
+
+    private DecodedBlock decodeBlock(BinaryReader in, Class<? extends Component> type) throws IOException {
+        Schema schema = getSchema(type);
+        in.clearShared();
+        DecodedBlock block = new DecodedBlock();
+        block.type = type;
+
+        // field descriptors: matched by name and kind
+        int fieldCount = in.readVarInt();
+        block.kinds = new int[fieldCount];
+        block.targets = new Field[fieldCount];
+        block.columns = new Object[fieldCount];
+        ValueCodec<?>[] fieldCodecs = new ValueCodec[fieldCount];
+        for (int f = 0; f < fieldCount; f++) {
+            String name = in.readStringRef();
+            block.kinds[f] = in.readByte();
+            if (block.kinds[f] == CODEC) {
+                String codecType = in.readStringRef();
+                fieldCodecs[f] = codecsByName.get(codecType);
+                if (fieldCodecs[f] == null) throw new IOException("No codec registered for " + codecType + ".");
+            }
+            int index = schema.indexOf(name);
+            if (index != -1 && schema.kinds[index] == block.kinds[f]) block.targets[f] = schema.fields[index];
+        }
+
+        // rows
+        int rowCount = in.readVarInt();
+        block.rows = new int[rowCount];
+        for (int r = 0, row = 0; r < rowCount; r++) {
+            row += in.readVarInt();
+            block.rows[r] = row;
+        }
+
+        // columns
+        for (int f = 0; f < fieldCount; f++) {
+            block.columns[f] = readColumn(in, block.kinds[f], fieldCodecs[f], rowCount);
+        }
+        return block;
+    }
+
+    /**
+     * @return a primitive array for primitive kinds and entity indices, otherwise an object array
+     */
+    private Object readColumn(BinaryReader in, int kind, ValueCodec<?> codec, int rows) throws IOException {
+        switch (kind) {
+            case BOOLEAN: {
+                boolean[] column = new boolean[rows];
+                for (int r = 0; r < rows; r++) column[r] = in.readBoolean();
+                return column;
+            }
+            case INT:
+            case ENTITY_ID:
+            case ENTITY: {
+                int[] column = new int[rows];
+                for (int r = 0; r < rows; r++) column[r] = in.readSignedVarInt();
+                return column;
+            }
+            case LONG: {
+                long[] column = new long[rows];
+                for (int r = 0; r < rows; r++) column[r] = in.readVarLong();
+                return column;
+            }
+            case FLOAT: {
+                float[] column = new float[rows];
+                for (int r = 0; r < rows; r++) column[r] = in.readFloat();
+                return column;
+            }
+            case DOUBLE: {
+                double[] column = new double[rows];
+                for (int r = 0; r < rows; r++) column[r] = in.readDouble();
+                return column;
+            }
+            case STRING:
+            case ENUM:
+            case JSON: {
+                String[] column = new String[rows];
+                for (int r = 0; r < rows; r++) column[r] = in.readStringRef();
+                return column;
+            }
+            case ENTITY_ID_BAG: {
+                int[][] column = new int[rows][];
+                for (int r = 0; r < rows; r++) {
+                    int[] locals = column[r] = new int[in.readVarInt()];
+                    for (int i = 0; i < locals.length; i++) locals[i] = in.readSignedVarInt();
+                }
+                return column;
+            }
+            case CODEC: {
+                Object[] column = new Object[rows];
+                for (int r = 0; r < rows; r++) column[r] = in.readBoolean() ? codec.read(in) : null;
+                return column;
+            }
+            default:
+                throw new IOException("Unknown field kind " + kind + ".");
+        }
+    }
+
+    private void applyColumn(Field target, int kind, Object column, Component[] components, int[] ids) throws IOException {
+        try {
+            switch (kind) {
+                case BOOLEAN: {
+                    boolean[] values = (boolean[]) column;
+                    for (int r = 0; r < components.length; r++) target.setBoolean(components[r], values[r]);
+                    break;
+                }
+                case INT: {
+                    int[] values = (int[]) column;
+                    Class<?> type = target.getType();
+                    for (int r = 0; r < components.length; r++) {
+                        if (type == int.class) target.setInt(components[r], values[r]);
+                        else if (type == short.class) target.setShort(components[r], (short) values[r]);
+                        else target.setByte(components[r], (byte) values[r]);
+                    }
+                    break;
+                }
+                case LONG: {
+                    long[] values = (long[]) column;
+                    for (int r = 0; r < components.length; r++) target.setLong(components[r], values[r]);
+                    break;
+                }
+                case FLOAT: {
+                    float[] values = (float[]) column;
+                    for (int r = 0; r < components.length; r++) target.setFloat(components[r], values[r]);
+                    break;
+                }
+                case DOUBLE: {
+                    double[] values = (double[]) column;
+                    for (int r = 0; r < components.length; r++) target.setDouble(components[r], values[r]);
+                    break;
+                }
+                case STRING:
+                case CODEC: {
+                    Object[] values = (Object[]) column;
+                    for (int r = 0; r < components.length; r++) target.set(components[r], values[r]);
+                    break;
+                }
+                case ENUM: {
+                    String[] values = (String[]) column;
+                    for (int r = 0; r < components.length; r++) {
+                        target.set(components[r], values[r] == null ? null : toEnum(target.getType(), values[r]));
+                    }
+                    break;
+                }
+                case JSON: {
+                    String[] values = (String[]) column;
+                    for (int r = 0; r < components.length; r++) {
+                        target.set(components[r], values[r] == null ? null : json.fromJson(target.getType(), values[r]));
+                    }
+                    break;
+                }
+                case ENTITY_ID: {
+                    int[] values = (int[]) column;
+                    for (int r = 0; r < components.length; r++) target.setInt(components[r], toId(values[r], ids));
+                    break;
+                }
+                case ENTITY: {
+                    int[] values = (int[]) column;
+                    for (int r = 0; r < components.length; r++) {
+                        int id = toId(values[r], ids);
+                        target.set(components[r], id == -1 ? null : world.getEntity(id));
+                    }
+                    break;
+                }
+                case ENTITY_ID_BAG: {
+                    int[][] values = (int[][]) column;
+                    for (int r = 0; r < components.length; r++) {
+                        IntBag bag = (IntBag) target.get(components[r]);
+                        if (bag == null) target.set(components[r], bag = new IntBag(values[r].length));
+                        bag.clear();
+                        for (int local : values[r]) {
+                            int id = toId(local, ids);
+                            if (id != -1) bag.add(id);
+                        }
+                    }
+                    break;
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IOException("Could not set field " + target, e);
+        }
+    }
+
+    /**
+     * adds the references of the column to entities of other files, those have been set to none
+     */
+    private void addExternal(DecodedBlock block, int f, Component[] components, int[] ids, EntityReferences references) {
+        switch (block.kinds[f]) {
+            case ENTITY_ID:
+            case ENTITY: {
+                int[] values = (int[]) block.columns[f];
+                for (int r = 0; r < components.length; r++) {
+                    if (EntityReferences.isExternal(values[r])) {
+                        references.add(ids[block.rows[r]], components[r], block.targets[f], block.kinds[f], new int[]{values[r]});
+                    }
+                }
+                break;
+            }
+            case ENTITY_ID_BAG: {
+                int[][] values = (int[][]) block.columns[f];
+                for (int r = 0; r < components.length; r++) {
+                    int[] locals = values[r];
+                    boolean external = false;
+                    for (int local : locals) external |= EntityReferences.isExternal(local);
+                    if (!external) continue;
+
+                    // keeps the order of the bag: local indices are resolved now, the others once loaded
+                    int[] targets = new int[locals.length];
+                    for (int i = 0; i < locals.length; i++) {
+                        targets[i] = EntityReferences.isExternal(locals[i]) ? locals[i] : toId(locals[i], ids);
+                    }
+                    references.add(ids[block.rows[r]], components[r], block.targets[f], block.kinds[f], targets);
+                }
+                break;
+            }
+        }
+    }
+
+    private int toId(int localIndex, int[] ids) {
+        return localIndex < 0 || localIndex >= ids.length ? -1 : ids[localIndex];
+    }
+
+    private Object toEnum(Class<?> type, String name) {
+        for (Object constant : type.getEnumConstants()) {
+            if (((Enum<?>) constant).name().equals(name)) return constant;
+        }
+        return null;
+    }
+
+    /**
+     * uses the context class loader (set by the ScriptManager) to include the external project classes
+     */
+    private Class<? extends Component> resolve(String typeName) {
+        try {
+            Class<?> type = Class.forName(typeName, true, Thread.currentThread().getContextClassLoader());
+            return Component.class.isAssignableFrom(type) ? (Class<? extends Component>) type : null;
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    // -- schema --
+
+    /**
+     * synchronized as chunks might be decoded concurrently
+     */
+    private synchronized Schema getSchema(Class<?> type) {
+        Schema schema = schemas.get(type);
+        if (schema == null) schemas.put(type, schema = createSchema(type));
+        return schema;
+    }
+
+    private Schema createSchema(Class<?> type) {
+        Array<Field> fields = new Array<>();
+        for (Class<?> c = type; c != null && c != Component.class && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) continue;
+                field.setAccessible(true);
+                fields.add(field);
+            }
+        }
+
+        Schema schema = new Schema();
+        schema.type = type;
+        schema.fields = fields.toArray(Field.class);
+        schema.kinds = new int[schema.fields.length];
+        schema.codecs = new ValueCodec[schema.fields.length];
+        for (int i = 0; i < schema.fields.length; i++) {
+            schema.kinds[i] = kindOf(schema.fields[i]);
+            if (schema.kinds[i] == CODEC) schema.codecs[i] = codecs.get(schema.fields[i].getType());
+        }
+        return schema;
+    }
+
+    private int kindOf(Field field) {
+        Class<?> type = field.getType();
+        boolean entityId = field.isAnnotationPresent(EntityId.class);
+        if (type == boolean.class) return BOOLEAN;
+        if (type == int.class) return entityId ? ENTITY_ID : INT;
+        if (type == short.class || type == byte.class) return INT;
+        if (type == long.class) return LONG;
+        if (type == float.class) return FLOAT;
+        if (type == double.class) return DOUBLE;
+        if (type == String.class) return STRING;
+        if (type.isEnum()) return ENUM;
+        if (type == IntBag.class && entityId) return ENTITY_ID_BAG;
+        if (type == Entity.class) return ENTITY;
+        if (codecs.containsKey(type)) return CODEC;
+        return JSON;
+    }
+
+    /**
+     * the serialized fields of a component type. Immutable once created.
+     */
+    private static class Schema {
+        Class<?> type;
+        Field[] fields;
+        int[] kinds;
+        ValueCodec<?>[] codecs;
+
+        int indexOf(String name) {
+            for (int i = 0; i < fields.length; i++) if (fields[i].getName().equals(name)) return i;
+            return -1;
+        }
+    }
+
+    /**
+     * The copied component data of one entity, see {@link #snapshot(int)}. Immutable.
+     */
+    public static class EntitySnapshot {
+        private int entityId, sceneId;
+        private Schema[] schemas;
+        /**
+         * per component the values of the schemas' fields
+         */
+        private Object[][] values;
+
+        public int getEntityId() {
+            return entityId;
+        }
+
+        public int getSceneId() {
+            return sceneId;
+        }
+    }
+
+    /**
+     * The content of a scene file read by {@link #decode(ReadableByteChannel)}, not yet added to the world.
+     */
+    public static class DecodedChunk {
+        /**
+         * per entity in file order
+         */
+        private int[] sceneIds;
+        private final Array<DecodedBlock> blocks = new Array<>();
+
+        public int getEntityCount() {
+            return sceneIds.length;
+        }
+
+        public int getSceneId(int index) {
+            return sceneIds[index];
+        }
+    }
+
+    /**
+     * the decoded columns of one component type
+     */
+    private static class DecodedBlock {
+        Class<? extends Component> type;
+        /**
+         * the local entity index of each row
+         */
+        int[] rows;
+        int[] kinds;
+        /**
+         * the field to set or null if the field does not exist anymore
+         */
+        Field[] targets;
+        Object[] columns;
+    }
+}
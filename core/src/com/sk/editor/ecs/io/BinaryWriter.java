@@ -0,0 +1,205 @@
+package com.sk.editor.ecs.io;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectIntMap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes little endian primitives and varints into a growable in-memory buffer, which is then written to a channel.
+ * Strings written via {@link #writeStringRef(String)} are interned in a string table shared between writers.
+ */
+public class BinaryWriter {
+
+    private byte[] bytes;
+    private int size;
+    private final StringTable strings;
+
+    public BinaryWriter(StringTable strings) {
+        this(strings, 1024);
+    }
+
+    public BinaryWriter(StringTable strings, int initialCapacity) {
+        this.strings = strings;
+        this.bytes = new byte[Math.max(initialCapacity, 16)];
+    }
+
+    // -- primitives --
+
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) value;
+    }
+
+    public void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * unsigned LEB128, 1 byte for values < 128
+     */
+    public void writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7f) != 0) {
+            bytes[size++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        bytes[size++] = (byte) value;
+    }
+
+    /**
+     * zig zag encoded so small negative values (i.e. -1) stay small
+     */
+    public void writeSignedVarInt(int value) {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    public void writeVarLong(long value) {
+        ensureCapacity(10);
+        value = (value << 1) ^ (value >> 63);
+        while ((value & ~0x7fL) != 0) {
+            bytes[size++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        bytes[size++] = (byte) value;
+    }
+
+    public void writeInt(int value) {
+        ensureCapacity(4);
+        bytes[size++] = (byte) value;
+        bytes[size++] = (byte) (value >>> 8);
+        bytes[size++] = (byte) (value >>> 16);
+        bytes[size++] = (byte) (value >>> 24);
+    }
+
+    public void writeFloat(float value) {
+        writeInt(Float.floatToRawIntBits(value));
+    }
+
+    public void writeDouble(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        writeInt((int) bits);
+        writeInt((int) (bits >>> 32));
+    }
+
+    /**
+     * writes the string inline: varint length in bytes followed by utf-8
+     */
+    public void writeString(String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(utf8.length);
+        writeBytes(utf8, 0, utf8.length);
+    }
+
+    /**
+     * writes the index of the string in the string table, 0 for null
+     */
+    public void writeStringRef(String value) {
+        writeVarInt(value == null ? 0 : strings.intern(value) + 1);
+    }
+
+    /**
+     * Writes a reference to a value shared within the scope (see {@link #clearShared()}): 0 for null, otherwise
+     * the index of its first occurrence + 1. The first occurrence has to be followed by the definition of the value.
+     *
+     * @param key identifies equal values, needs equals and hashCode
+     * @return true if the value is written the first time and the caller has to write its definition
+     */
+    public boolean writeSharedRef(Object key) {
+        if (key == null) {
+            writeVarInt(0);
+            return false;
+        }
+        int index = strings.shared.get(key, -1);
+        if (index != -1) {
+            writeVarInt(index + 1);
+            return false;
+        }
+        index = strings.shared.size;
+        strings.shared.put(key, index);
+        writeVarInt(index + 1);
+        return true;
+    }
+
+    /**
+     * starts a new scope for {@link #writeSharedRef(Object)}
+     */
+    public void clearShared() {
+        strings.shared.clear();
+    }
+
+    public void writeBytes(byte[] src, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(src, offset, bytes, size, length);
+        size += length;
+    }
+
+    /**
+     * appends the content of the other writer
+     */
+    public void write(BinaryWriter other) {
+        writeBytes(other.bytes, 0, other.size);
+    }
+
+    // -- buffer --
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public StringTable getStrings() {
+        return strings;
+    }
+
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, size);
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + additional));
+    }
+
+
+    /**
+     * Interns strings (names, component types, asset paths) so each is written once per file.
+     * Also keeps the indices of the values written with {@link #writeSharedRef(Object)}.
+     */
+    public static class StringTable {
+        private final ObjectIntMap<String> indices = new ObjectIntMap<>();
+        private final Array<String> strings = new Array<>();
+        private final ObjectIntMap<Object> shared = new ObjectIntMap<>();
+
+        public int intern(String value) {
+            int index = indices.get(value, -1);
+            if (index == -1) {
+                index = strings.size;
+                indices.put(value, index);
+                strings.add(value);
+            }
+            return index;
+        }
+
+        public int size() {
+            return strings.size;
+        }
+
+        public String get(int index) {
+            return strings.get(index);
+        }
+
+        public void clear() {
+            indices.clear();
+            strings.clear();
+            shared.clear();
+        }
+    }
+}
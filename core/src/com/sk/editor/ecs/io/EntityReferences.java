@@ -0,0 +1,150 @@
+package com.sk.editor.ecs.io;
+
+import com.artemis.Component;
+import com.artemis.World;
+import com.artemis.utils.IntBag;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntIntMap;
+import com.badlogic.gdx.utils.Logger;
+import com.sk.editor.ui.logger.EditorLogger;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+
+/**
+ * Resolves entity references between the chunks of a scene (see {@link SceneFiles}).
+ * Each saved entity has a scene id, unique and stable within its scene directory. References to entities of another
+ * chunk are written as scene id and set once the chunk of the target has been committed, see
+ * {@link BinaryWorldSerializer#commit(BinaryWorldSerializer.DecodedChunk, IntBag, EntityReferences)}.
+ * Has to be used on the thread processing the world.
+ */
+public class EntityReferences {
+
+    private static final EditorLogger log = new EditorLogger(EntityReferences.class.toString(), Logger.DEBUG);
+
+    private final World world;
+    /**
+     * by scene id: the entity id
+     */
+    private final IntIntMap entityIds = new IntIntMap();
+    private final Array<Reference> pending = new Array<>(false, 16);
+
+    EntityReferences(World world) {
+        this.world = world;
+    }
+
+    /**
+     * @return the value written for a reference to an entity of another chunk
+     */
+    static int toExternal(int sceneId) {
+        return -2 - sceneId;
+    }
+
+    static boolean isExternal(int reference) {
+        return reference < -1;
+    }
+
+    void register(int sceneId, int entityId) {
+        entityIds.put(sceneId, entityId);
+    }
+
+    /**
+     * @param targets per target the entity id, -1 for none or the {@link #toExternal(int)} value
+     */
+    void add(int ownerId, Component component, Field field, int kind, int[] targets) {
+        Reference reference = new Reference();
+        reference.ownerId = ownerId;
+        reference.component = component;
+        reference.field = field;
+        reference.kind = kind;
+        reference.targets = targets;
+        pending.add(reference);
+    }
+
+    /**
+     * Sets the references whose targets have been committed meanwhile.
+     *
+     * @param out the bag to add the ids of the entities with set references to
+     * @return the given bag
+     */
+    public IntBag resolve(IntBag out) throws IOException {
+        for (int i = pending.size - 1; i >= 0; i--) {
+            Reference reference = pending.get(i);
+            if (!world.getEntityManager().isActive(reference.ownerId)) {
+                pending.removeIndex(i); // deleted meanwhile
+                continue;
+            }
+            if (!isResolvable(reference)) continue;
+            apply(reference);
+            pending.removeIndex(i);
+            out.add(reference.ownerId);
+        }
+        return out;
+    }
+
+    public boolean hasPending() {
+        return pending.size > 0;
+    }
+
+    /**
+     * Drops the references whose targets have not been loaded, i.e. their chunk failed or the target had been deleted.
+     * Logs the dropped fields since they are written as none on the next save of their chunk.
+     */
+    public void clear() {
+        for (Reference reference : pending) {
+            log.error("Dropping the reference of " + reference.field.getDeclaringClass().getName() + "."
+                    + reference.field.getName() + " of entity " + reference.ownerId + ", its target has not been loaded.");
+        }
+        pending.clear();
+        entityIds.clear();
+    }
+
+    // -- private --
+
+    private boolean isResolvable(Reference reference) {
+        for (int target : reference.targets) {
+            if (isExternal(target) && !entityIds.containsKey(-2 - target)) return false;
+        }
+        return true;
+    }
+
+    private int toId(int target) {
+        return isExternal(target) ? entityIds.get(-2 - target, -1) : target;
+    }
+
+    private void apply(Reference reference) throws IOException {
+        try {
+            switch (reference.kind) {
+                case BinaryWorldSerializer.ENTITY_ID:
+                    reference.field.setInt(reference.component, toId(reference.targets[0]));
+                    break;
+                case BinaryWorldSerializer.ENTITY:
+                    int id = toId(reference.targets[0]);
+                    reference.field.set(reference.component, id == -1 ? null : world.getEntity(id));
+                    break;
+                case BinaryWorldSerializer.ENTITY_ID_BAG:
+                    IntBag bag = (IntBag) reference.field.get(reference.component);
+                    if (bag == null) reference.field.set(reference.component, bag = new IntBag(reference.targets.length));
+                    bag.clear();
+                    for (int target : reference.targets) {
+                        int targetId = toId(target);
+                        if (targetId != -1) bag.add(targetId);
+                    }
+                    break;
+            }
+        } catch (IllegalAccessException e) {
+            throw new IOException("Could not set field " + reference.field, e);
+        }
+    }
+
+    /**
+     * a field waiting for the chunks of its targets
+     */
+    private static class Reference {
+        int ownerId;
+        Component component;
+        Field field;
+        int kind;
+        int[] targets;
+    }
+}
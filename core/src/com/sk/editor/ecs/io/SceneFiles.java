@@ -0,0 +1,145 @@
+package com.sk.editor.ecs.io;
+
+import com.badlogic.gdx.utils.Array;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The layout of a scene directory: one chunk file per root (see {@link BinaryWorldSerializer}) and a manifest
+ * listing the chunks and the next free scene id (see {@link EntityReferences}). Entities without
+ * {@link com.sk.editor.ecs.components.Transform} share the {@link #LOOSE_CHUNK_NAME} chunk.
+ */
+public final class SceneFiles {
+
+    public static final int MANIFEST_MAGIC = 0x534b4d31; // SKM1
+    public static final int MANIFEST_VERSION = 1;
+
+    public static final String MANIFEST_FILE_NAME = "manifest.skm";
+    public static final String LOOSE_CHUNK_NAME = "loose.skw";
+    public static final String CHUNK_PREFIX = "chunk-", CHUNK_SUFFIX = ".skw";
+
+    private SceneFiles() {}
+
+    public static String chunkName(int number) {
+        return CHUNK_PREFIX + number + CHUNK_SUFFIX;
+    }
+
+    /**
+     * @return the number of the chunk name or -1
+     */
+    public static int chunkNumber(String chunkName) {
+        if (!chunkName.startsWith(CHUNK_PREFIX) || !chunkName.endsWith(CHUNK_SUFFIX)) return -1;
+        try {
+            return Integer.parseInt(chunkName.substring(CHUNK_PREFIX.length(), chunkName.length() - CHUNK_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public static boolean hasManifest(Path directory) {
+        return Files.exists(directory.resolve(MANIFEST_FILE_NAME));
+    }
+
+    public static Manifest readManifest(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory.resolve(MANIFEST_FILE_NAME), StandardOpenOption.READ)) {
+            BinaryReader in = new BinaryReader(channel, 4096);
+            if (in.readInt() != MANIFEST_MAGIC) throw new IOException("Not a scene manifest.");
+            int version = in.readVarInt();
+            if (version != MANIFEST_VERSION) throw new IOException("Unsupported manifest version " + version + ".");
+            Manifest manifest = new Manifest();
+            manifest.nextSceneId = in.readVarInt();
+            int count = in.readVarInt();
+            Array<ChunkInfo> chunks = manifest.chunks;
+            chunks.ensureCapacity(count);
+            for (int i = 0; i < count; i++) {
+                ChunkInfo chunk = new ChunkInfo();
+                chunk.name = in.readString();
+                chunk.rootName = in.readString();
+                chunk.rootIndex = in.readSignedVarInt();
+                chunk.entityCount = in.readVarInt();
+                chunk.pinned = in.readBoolean();
+                chunks.add(chunk);
+            }
+            return manifest;
+        }
+    }
+
+    public static void writeManifest(Path directory, Manifest manifest) throws IOException {
+        Array<ChunkInfo> chunks = manifest.chunks;
+        BinaryWriter out = new BinaryWriter(null, 64 + chunks.size * 32);
+        out.writeInt(MANIFEST_MAGIC);
+        out.writeVarInt(MANIFEST_VERSION);
+        out.writeVarInt(manifest.nextSceneId);
+        out.writeVarInt(chunks.size);
+        for (ChunkInfo chunk : chunks) {
+            out.writeString(chunk.name);
+            out.writeString(chunk.rootName);
+            out.writeSignedVarInt(chunk.rootIndex);
+            out.writeVarInt(chunk.entityCount);
+            out.writeBoolean(chunk.pinned);
+        }
+        writeAtomically(directory.resolve(MANIFEST_FILE_NAME), out::writeTo);
+    }
+
+    /**
+     * Writes to a temporary file next to the target, syncs it and replaces the target.
+     * The target is either the old or the complete new content, even after a crash.
+     */
+    public static void writeAtomically(Path target, ChannelWriter writer) throws IOException {
+        if (target.getParent() != null) Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writer.write(channel);
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public static class Manifest {
+        /**
+         * scene ids are not reused, so references to deleted entities do not resolve to new ones
+         */
+        public int nextSceneId;
+        public final Array<ChunkInfo> chunks = new Array<>();
+    }
+
+    /**
+     * A manifest entry. Describes the chunk without loading it (i.e. for placeholders).
+     */
+    public static class ChunkInfo {
+        public String name;
+        /**
+         * the name of the root transform, empty for the loose chunk
+         */
+        public String rootName = "";
+        /**
+         * the index of the root transform, see {@link com.sk.editor.ecs.components.Transform#getIndex()}
+         */
+        public int rootIndex;
+        public int entityCount;
+        /**
+         * pinned chunks are loaded before the editor becomes interactive
+         */
+        public boolean pinned;
+
+        public boolean isLoose() {
+            return LOOSE_CHUNK_NAME.equals(name);
+        }
+    }
+
+    public interface ChannelWriter {
+        void write(WritableByteChannel channel) throws IOException;
+    }
+}
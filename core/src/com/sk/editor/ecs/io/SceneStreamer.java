@@ -0,0 +1,289 @@
+package com.sk.editor.ecs.io;
+
+import com.artemis.utils.IntBag;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.Logger;
+import com.badlogic.gdx.utils.Null;
+import com.badlogic.gdx.utils.TimeUtils;
+import com.sk.editor.EditorManager;
+import com.sk.editor.ui.logger.EditorLogger;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads a chunked scene (see {@link SceneFiles}) in two phases:
+ * <ul>
+ *     <li>the loose and pinned chunks are loaded right away</li>
+ *     <li>the other chunks are decoded on background threads, top-most root first, and committed to the world on
+ *     the GL thread in {@link #update()} until the frame budget is used up. A chunk is committed as a whole</li>
+ * </ul>
+ * Until its chunk is committed, a root is only known by its {@link SceneFiles.ChunkInfo}, see {@link #getPendingChunks()}.
+ * References to entities of other chunks are set once the chunk of the target is committed, see {@link EntityReferences}.
+ * Chunks decoded with the classes of scripts reloaded meanwhile are decoded again before being committed.
+ * The {@link AutosaveService} is suspended while loading, since a save would delete the pending chunks.
+ */
+public class SceneStreamer implements Disposable {
+
+    private static final EditorLogger log = new EditorLogger(SceneStreamer.class.toString(), Logger.DEBUG);
+
+    private final BinaryWorldSerializer serializer;
+    private final AutosaveService autosaveService;
+    private final ExecutorService executor;
+    private final ConcurrentLinkedQueue<Decoded> decoded = new ConcurrentLinkedQueue<>();
+    private final Array<SceneFiles.ChunkInfo> pending = new Array<>();
+    private final Array<StreamListener> listeners = new Array<>();
+    private final IntBag tmpIds = new IntBag();
+    private @Null EntityReferences references;
+    /**
+     * the loader decoding resolves component types with, the context class loader of the GL thread
+     */
+    private volatile ClassLoader classLoader;
+
+    private float frameBudget;
+
+    /**
+     * @param frameBudget the max milliseconds spent committing chunks per frame
+     */
+    public SceneStreamer(BinaryWorldSerializer serializer, AutosaveService autosaveService, float frameBudget) {
+        this.serializer = serializer;
+        this.autosaveService = autosaveService;
+        this.frameBudget = frameBudget;
+
+        AtomicInteger count = new AtomicInteger();
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "SceneStreamer-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Loads the scene directory. Has to be called on the GL thread.
+     *
+     * @param streamed if false all chunks are loaded before returning
+     */
+    public void load(Path directory, boolean streamed) throws IOException {
+        SceneFiles.Manifest manifest = SceneFiles.readManifest(directory);
+        Array<SceneFiles.ChunkInfo> chunks = manifest.chunks;
+        autosaveService.manifestLoaded(manifest);
+        references = serializer.createReferences();
+
+        // loose and pinned chunks first, the others top-most root first
+        Array<SceneFiles.ChunkInfo> streaming = new Array<>(chunks.size);
+        for (SceneFiles.ChunkInfo chunk : chunks) {
+            if (!streamed || chunk.isLoose() || chunk.pinned) {
+                try {
+                    commit(chunk, loadChunk(directory, chunk));
+                } catch (IOException e) {
+                    failed(chunk, e);
+                }
+            } else {
+                streaming.add(chunk);
+            }
+        }
+        streaming.sort((a, b) -> Integer.compare(b.rootIndex, a.rootIndex));
+
+        resolveReferences();
+        if (streaming.isEmpty()) {
+            finishReferences();
+            return;
+        }
+        autosaveService.setSuspended(true);
+
+        // decoding resolves component types with the current class loader including the project classes
+        classLoader = Thread.currentThread().getContextClassLoader();
+        for (SceneFiles.ChunkInfo chunk : streaming) {
+            pending.add(chunk);
+            for (int i = 0; i < listeners.size; i++) listeners.get(i).chunkPending(chunk);
+            decode(directory, chunk);
+        }
+    }
+
+    /**
+     * Commits decoded chunks until the frame budget is used up, at least one.
+     * Has to be called on the GL thread before processing the world.
+     */
+    public void update() {
+        if (pending.isEmpty()) return;
+
+        // the scripts may have been reloaded since the last frame
+        ClassLoader current = Thread.currentThread().getContextClassLoader();
+        classLoader = current;
+
+        long start = TimeUtils.nanoTime();
+        long budget = (long) (frameBudget * 1000000);
+        Decoded next;
+        while ((next = decoded.poll()) != null) {
+            if (next.classLoader != current) { // its components are instances of the former classes
+                decode(next.directory, next.info);
+                continue;
+            }
+            pending.removeValue(next.info, true);
+            if (next.error != null) failed(next.info, next.error);
+            else commit(next.info, next.chunk);
+            if (TimeUtils.nanoTime() - start >= budget) break;
+        }
+        resolveReferences();
+
+        if (pending.isEmpty()) {
+            finishReferences();
+            autosaveService.setSuspended(false);
+            log.debug("Streaming done.");
+        }
+        EditorManager.requestRendering(); // the next batch or the results of this one
+    }
+
+    /**
+     * @return true while chunks are being decoded or committed
+     */
+    public boolean isLoading() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * @return the chunks not committed yet. Do not modify.
+     */
+    public Array<SceneFiles.ChunkInfo> getPendingChunks() {
+        return pending;
+    }
+
+    /**
+     * @param frameBudget the max milliseconds spent committing chunks per frame
+     */
+    public void setFrameBudget(float frameBudget) {
+        this.frameBudget = frameBudget;
+    }
+
+    public float getFrameBudget() {
+        return frameBudget;
+    }
+
+    public void addListener(StreamListener listener) {
+        if (!listeners.contains(listener, true)) listeners.add(listener);
+    }
+
+    public void removeListener(StreamListener listener) {
+        listeners.removeValue(listener, true);
+    }
+
+    @Override
+    public void dispose() {
+        executor.shutdownNow();
+    }
+
+    // -- private --
+
+    /**
+     * decodes the chunk in the background with the current {@link #classLoader}
+     */
+    private void decode(Path directory, SceneFiles.ChunkInfo chunk) {
+        executor.execute(() -> {
+            Decoded result = new Decoded(directory, chunk, classLoader);
+            Thread.currentThread().setContextClassLoader(result.classLoader);
+            try {
+                result.chunk = loadChunk(directory, chunk);
+            } catch (Exception e) {
+                result.error = e;
+            }
+            decoded.add(result);
+            EditorManager.requestRendering();
+        });
+    }
+
+    /**
+     * runs on any thread
+     */
+    private BinaryWorldSerializer.DecodedChunk loadChunk(Path directory, SceneFiles.ChunkInfo chunk) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory.resolve(chunk.name), StandardOpenOption.READ)) {
+            return serializer.decode(channel);
+        }
+    }
+
+    private void commit(SceneFiles.ChunkInfo info, BinaryWorldSerializer.DecodedChunk chunk) {
+        try {
+            serializer.commit(chunk, tmpIds, references);
+            autosaveService.chunkLoaded(info, tmpIds, chunk);
+            int rootId = info.isLoose() || tmpIds.isEmpty() ? -1 : tmpIds.get(0);
+            for (int i = 0; i < listeners.size; i++) listeners.get(i).chunkLoaded(info, rootId);
+        } catch (IOException e) {
+            failed(info, e);
+        } finally {
+            tmpIds.clear();
+        }
+    }
+
+    /**
+     * sets the references to entities of committed chunks, their snapshots are updated so the chunks are not written
+     */
+    private void resolveReferences() {
+        if (!references.hasPending()) return;
+        try {
+            references.resolve(tmpIds);
+            autosaveService.referencesResolved(tmpIds);
+        } catch (IOException e) {
+            log.error("Resolving entity references failed.", e);
+        } finally {
+            tmpIds.clear();
+        }
+    }
+
+    /**
+     * drops the references to entities of chunks that could not be loaded
+     */
+    private void finishReferences() {
+        references.clear();
+        references = null;
+    }
+
+    /**
+     * keeps the chunk in the scene so saving does not delete it
+     */
+    private void failed(SceneFiles.ChunkInfo info, Exception e) {
+        log.error("Loading chunk " + info.name + " failed.", e);
+        autosaveService.retainChunk(info);
+        for (int i = 0; i < listeners.size; i++) listeners.get(i).chunkLoaded(info, -1);
+    }
+
+    private static class Decoded {
+        final Path directory;
+        final SceneFiles.ChunkInfo info;
+        /**
+         * the loader the component types were resolved with
+         */
+        final ClassLoader classLoader;
+        BinaryWorldSerializer.DecodedChunk chunk;
+        Exception error;
+
+        Decoded(Path directory, SceneFiles.ChunkInfo info, ClassLoader classLoader) {
+            this.directory = directory;
+            this.info = info;
+            this.classLoader = classLoader;
+        }
+    }
+
+    /**
+     * Called on the GL thread
+     */
+    public interface StreamListener {
+        /**
+         * the chunk is being decoded and committed in a later frame
+         */
+        void chunkPending(SceneFiles.ChunkInfo chunk);
+
+        /**
+         * the entities of the chunk have been created and will be inserted on the next world process
+         *
+         * @param rootId -1 for the loose chunk or if loading failed
+         */
+        void chunkLoaded(SceneFiles.ChunkInfo chunk, int rootId);
+    }
+}
@@ -0,0 +1,81 @@
+package com.sk.editor.ecs.io;
+
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.sk.editor.ecs.utils.TextureRegionCache;
+
+import java.io.IOException;
+
+/**
+ * Binary counterpart of the {@link com.sk.editor.ecs.TextureRegionSerializer}.
+ * Each unique region is defined once per component block and referenced by index afterwards. Loaded regions are shared
+ * through the {@link TextureRegionCache}.
+ * All to be de/-serialized texture regions must be loaded to the assetManager.
+ */
+public class TextureRegionCodec implements ValueCodec<TextureRegion> {
+
+    private final TextureRegionCache cache;
+
+    public TextureRegionCodec(TextureRegionCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void write(BinaryWriter out, TextureRegion region) {
+        TextureRegionCache.Key key = TextureRegionCache.Key.of(region);
+        if (out.writeSharedRef(key)) writeDefinition(out, key);
+    }
+
+    @Override
+    public TextureRegion read(BinaryReader in) throws IOException {
+        int index = in.readSharedRef();
+        if (index == -1) return null;
+        if (index < in.getSharedCount()) return (TextureRegion) in.getShared(index);
+
+        TextureRegion region = readDefinition(in);
+        in.addShared(region);
+        return region;
+    }
+
+    // -- private --
+
+    private void writeDefinition(BinaryWriter out, TextureRegionCache.Key key) {
+        out.writeBoolean(key.isAtlasRegion());
+        out.writeStringRef(key.path);
+
+        // atlas region
+        if (key.isAtlasRegion()) {
+            out.writeStringRef(key.name);
+            out.writeSignedVarInt(key.index);
+
+        } else { // texture region (maybe sprite)
+            out.writeFloat(key.u);
+            out.writeFloat(key.v);
+            out.writeFloat(key.u2);
+            out.writeFloat(key.v2);
+            out.writeVarInt(key.regionWidth);
+            out.writeVarInt(key.regionHeight);
+        }
+    }
+
+    private TextureRegion readDefinition(BinaryReader in) throws IOException {
+        boolean hasAtlas = in.readBoolean();
+        String texturePath = in.readStringRef();
+
+        // atlas region
+        if (hasAtlas) {
+            String name = in.readStringRef();
+            int index = in.readSignedVarInt();
+            return cache.getAtlasRegion(texturePath, name, index);
+        }
+
+        // texture region (maybe sprite)
+        float u = in.readFloat();
+        float v = in.readFloat();
+        float u2 = in.readFloat();
+        float v2 = in.readFloat();
+        int regionWidth = in.readVarInt();
+        int regionHeight = in.readVarInt();
+        //textures and atlases have to be loaded to the asset manager
+        return cache.getRegion(texturePath, u, v, u2, v2, regionWidth, regionHeight);
+    }
+}
@@ -0,0 +1,15 @@
+package com.sk.editor.ecs.io;
+
+import java.io.IOException;
+
+/**
+ * Writes and reads field values of a specific type in the binary scene format.
+ * Register with {@link BinaryWorldSerializer#register(Class, ValueCodec)}.
+ * Values are never null, null is handled by the serializer.
+ */
+public interface ValueCodec<T> {
+
+    void write(BinaryWriter out, T value);
+
+    T read(BinaryReader in) throws IOException;
+}
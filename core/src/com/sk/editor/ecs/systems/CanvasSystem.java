@@ -8,6 +8,7 @@ import com.artemis.utils.Bag;
 import com.artemis.utils.IntBag;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.utils.viewport.Viewport;
 import com.sk.editor.EditorManager;
 import com.sk.editor.ecs.components.Canvas;
@@ -18,12 +19,23 @@ import com.sk.editor.ui.NotifyingOrthographicCamera;
 public class CanvasSystem extends BaseEntitySystem implements NotifyingOrthographicCamera.CameraListener {
 
 
-    private static final Transform.TransformComparator comparator = new Transform.TransformComparator();
-
-
     ComponentMapper<Canvas> canvasMapper;
     ComponentMapper<Transform> transformMapper;
-    Bag<Entity> tmpBag = new Bag<>();
+    TransformSystem transformSystem;
+    RootCanvasManager rootCanvasManager;
+
+    /**
+     * if true subtrees whose world bounds do not overlap the view of their root canvas are skipped
+     */
+    public boolean culling = true;
+    /**
+     * the world area visible through the current root canvas
+     */
+    protected final Rectangle view = new Rectangle();
+    /**
+     * per frame counters. drawn is increased by subclasses
+     */
+    protected int visitedCount, culledCount, drawnCount;
 
 
     private EditorManager editorManager;
@@ -37,13 +49,16 @@ public class CanvasSystem extends BaseEntitySystem implements NotifyingOrthograp
 
     @Override
     protected void processSystem() {
-        getRootCanvases(tmpBag);
+        visitedCount = 0;
+        culledCount = 0;
+        drawnCount = 0;
+        IntBag roots = rootCanvasManager.getRootCanvases();
 
         // process canvases
-        for (Entity e : tmpBag) {
-            processRootCanvas(e.getId(), transformMapper.get(e), canvasMapper.get(e));
+        for (int i = 0, n = roots.size(); i < n; i++) {
+            int id = roots.get(i);
+            processRootCanvas(id, transformMapper.get(id), canvasMapper.get(id));
         }
-        tmpBag.clear();
     }
 
     /**
@@ -55,6 +70,8 @@ public class CanvasSystem extends BaseEntitySystem implements NotifyingOrthograp
      */
     protected void processRootCanvas(int entityId, Transform transform, Canvas canvas) {
         canvas.apply();
+        canvas.getWorldView(view);
+        if (isCulled(entityId)) return;
         process(entityId);
     }
 
@@ -74,13 +91,28 @@ public class CanvasSystem extends BaseEntitySystem implements NotifyingOrthograp
             if (transform.childrenChanged()) transform.sortChildren();
 
             // process children
-            for (Entity child : transform.getChildren()) {
-                process(child.getId());
+            IntBag children = transform.getChildIds();
+            for (int i = 0, n = children.size(); i < n; i++) {
+                int childId = children.get(i);
+                if (isCulled(childId)) continue;
+                process(childId);
             }
         }
     }
 
 
+    /**
+     * counts the entity as visited and, if culling is enabled, checks its subtree against the current view
+     * @return true if the entity and its descendants should be skipped
+     */
+    protected boolean isCulled(int entityId) {
+        visitedCount++;
+        if (!culling || transformSystem.overlapsSubtree(entityId, view.x, view.y, view.x + view.width, view.y + view.height))
+            return false;
+        culledCount++;
+        return true;
+    }
+
     @Override
     protected void inserted(int entityId) {
         Canvas canvas = canvasMapper.get(entityId);
@@ -104,6 +136,29 @@ public class CanvasSystem extends BaseEntitySystem implements NotifyingOrthograp
         }
     }
 
+    // -- stats --
+
+    /**
+     * @return the amount of entities checked against the view in the last frame
+     */
+    public int getVisitedCount() {
+        return visitedCount;
+    }
+
+    /**
+     * @return the amount of subtrees skipped in the last frame
+     */
+    public int getCulledCount() {
+        return culledCount;
+    }
+
+    /**
+     * @return the amount of entities drawn in the last frame
+     */
+    public int getDrawnCount() {
+        return drawnCount;
+    }
+
     /**
      * Fills the given bag sorted with the currently existing root canvases.
      *
@@ -111,17 +166,16 @@ public class CanvasSystem extends BaseEntitySystem implements NotifyingOrthograp
      * @return the given bag filled with the current root canvases
      */
     public Bag<Entity> getRootCanvases(Bag<Entity> emptyBag) {
-        IntBag actives = getEntityIds();
-        int[] ids = actives.getData();
-
-        // sort canvases (typically just a hand full)
-        for (int i = 0, s = actives.size(); s > i; i++) {
-            int id = ids[i];
-            Transform transform = transformMapper.get(id);
-            if(transform.isRoot())emptyBag.add(getWorld().getEntity(id));
-        }
-        emptyBag.sort(comparator);
+        IntBag roots = rootCanvasManager.getRootCanvases();
+        for (int i = 0, n = roots.size(); i < n; i++) emptyBag.add(getWorld().getEntity(roots.get(i)));
         return emptyBag;
     }
 
+    /**
+     * @return the ids of the current root canvases sorted by index. Do not modify.
+     */
+    public IntBag getRootCanvasIds() {
+        return rootCanvasManager.getRootCanvases();
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,49 @@
+package com.sk.editor.ecs.systems;
+
+import com.artemis.BaseSystem;
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Collects which entities have been edited so consumers (i.e. the autosave) only look at those instead of
+ * comparing the whole world. Marked by the {@link com.sk.editor.ecs.components.Transform} setters and
+ * invalidation hooks and by the editing tools (inspector) after changing a component.
+ * Changes made by directly writing fields without calling a hook are not seen.
+ */
+public class ChangeTracker extends BaseSystem {
+
+    private final Array<ChangeListener> listeners = new Array<>();
+
+    @Override
+    protected void initialize() {
+        setEnabled(false); // only reacts to events
+    }
+
+    @Override
+    protected void processSystem() {
+    }
+
+    // -- public --
+
+    /**
+     * Notifies the listeners immediately. Has to be called on the thread processing the world.
+     */
+    public void markChanged(int entityId) {
+        for (int i = 0; i < listeners.size; i++) listeners.get(i).changed(entityId);
+    }
+
+    public void addListener(ChangeListener listener) {
+        if (!listeners.contains(listener, true)) listeners.add(listener);
+    }
+
+    public void removeListener(ChangeListener listener) {
+        listeners.removeValue(listener, true);
+    }
+
+    public interface ChangeListener {
+        /**
+         * a component of the entity changed or a component has been added to or removed from it.
+         * Might be called multiple times per change.
+         */
+        void changed(int entityId);
+    }
+}
@@ -6,47 +6,79 @@ import com.artemis.annotations.All;
 import com.artemis.annotations.Wire;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
-import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.math.Affine2;
+import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.utils.Null;
-import com.badlogic.gdx.utils.Pools;
 import com.badlogic.gdx.utils.viewport.Viewport;
 import com.sk.editor.EditorManager;
 import com.sk.editor.config.Config;
 import com.sk.editor.ecs.components.Canvas;
 import com.sk.editor.ecs.components.Image;
 import com.sk.editor.ecs.components.Transform;
+import com.sk.editor.ecs.utils.DebugLineBuffer;
 
+/**
+ * Draws the outlines of all transforms. The lines of a root canvas are collected into one {@link DebugLineBuffer}
+ * with per vertex colors and submitted with a single flush per canvas.
+ */
 @Wire(injectInherited = true)
 @All({Transform.class, Canvas.class})
 public class DebugSystem extends CanvasSystem {
 
     public final Color
             DEBUG_COLOR = Config.DARKEST_GRAY.cpy(),
-            SELECTED_COLOR = Config.GREEN.cpy(),
-            tmpColor = new Color();
+            SELECTED_COLOR = Config.GREEN.cpy();
 
     ComponentMapper<Transform> transformMapper;
     ComponentMapper<Canvas> canvasMapper;
     ComponentMapper<Image> imageMapper;
+    TransformSystem transformSystem;
 
     private ShapeRenderer renderer;
+    private final DebugLineBuffer lines = new DebugLineBuffer();
+    private final Affine2 worldMatrix = new Affine2();
+    private final Rectangle tmpBounds = new Rectangle();
+    private float debugColor, selectedColor;
+    /**
+     * the depth of the currently processed entity, the root canvas has a depth of 0
+     */
+    private int depth;
 
     private @Null Entity selectedEntity;
 
     public boolean debug = true;
+    /**
+     * if true only the selected entity is drawn
+     */
+    public boolean selectedOnly;
+    /**
+     * the deepest level to draw or -1 for no limit. The root canvas has a depth of 0
+     */
+    public int maxDepth = -1;
+    /**
+     * if true draws the aggregated axis aligned bounds of each subtree instead of the outline of each entity.
+     * Combined with {@link #maxDepth} deep hierarchies are summarized by few boxes.
+     */
+    public boolean subtreeBounds;
 
     public DebugSystem(ShapeRenderer renderer, EditorManager editorManager, Viewport ecsViewport) {
         super(editorManager, ecsViewport);
         this.renderer = renderer;
     }
 
+    @Override
+    protected boolean checkProcessing() {
+        return debug;
+    }
+
     @Override
     protected void processSystem() {
+        debugColor = DEBUG_COLOR.toFloatBits();
+        selectedColor = SELECTED_COLOR.toFloatBits();
+
         // setup renderer
         //Gdx.gl.glEnable(GL20.GL_BLEND);
-        renderer.setAutoShapeType(true);
-        renderer.setColor(Color.WHITE);
-        renderer.begin();
+        renderer.begin(ShapeRenderer.ShapeType.Line);
 
         // process
         super.processSystem();
@@ -56,51 +88,50 @@ public class DebugSystem extends CanvasSystem {
 
     @Override
     protected void processRootCanvas(int entityId, Transform transform, Canvas canvas) {
-        if(transform.isRoot()){
-            renderer.flush();
-            renderer.setProjectionMatrix(canvas.combined());
-        }
-
-        // processes canvases and applies the viewport if possible
-        super.processRootCanvas(entityId, transform, canvas);
+        lines.clear();
+        depth = 0;
+
+        // collect lines, applies the viewport
+        if (selectedOnly) {
+            canvas.apply();
+            if (selectedEntity != null && transformMapper.has(selectedEntity.getId())
+                    && transformMapper.get(selectedEntity.getId()).getRoot() == transform)
+                addLines(selectedEntity.getId(), transformMapper.get(selectedEntity.getId()));
+        } else super.processRootCanvas(entityId, transform, canvas);
+
+        // submit
+        if (lines.isEmpty()) return;
+        renderer.setProjectionMatrix(canvas.combined());
+        renderer.flush(); // begins with the projection of this canvas
+        lines.submit(renderer);
+        renderer.flush();
     }
 
     @Override
     protected void process(int entityId) {
-        renderer.flush();
-        tmpColor.set(renderer.getColor());
-
         Transform transform = transformMapper.getSafe(entityId, null);
         if (transform == null) return;
 
-        // set debug color
-        if (selectedEntity != null && entityId == selectedEntity.getId()){
-            renderer.setColor(SELECTED_COLOR);
-        } else renderer.setColor(DEBUG_COLOR);
-
-        Vector2 worldCoord = Pools.obtain(Vector2.class);
-        worldCoord.set(transform.x, transform.y);
-        transform.parentToWorldCoord(worldCoord); // TODO: improve
-
         // debug self
-        renderer.rect(
-                worldCoord.x ,
-                worldCoord.y,
-                    0,
-                    0,
-                    transform.width,
-                    transform.height,
-                    1f,
-                    1f,
-                    0
-            );
-
-        renderer.flush();
-        renderer.setColor(tmpColor);
-        Pools.free(worldCoord);
+        addLines(entityId, transform);
 
-        // sort and process children
+        // sort and process children up to the max depth
+        if (maxDepth >= 0 && depth >= maxDepth) return;
+        depth++;
         super.process(entityId);
+        depth--;
+    }
+
+    private void addLines(int entityId, Transform transform) {
+        float color = selectedEntity != null && entityId == selectedEntity.getId() ? selectedColor : debugColor;
+        if (subtreeBounds) {
+            transformSystem.getSubtreeBounds(entityId, tmpBounds);
+            lines.rect(tmpBounds.x, tmpBounds.y, tmpBounds.x + tmpBounds.width, tmpBounds.y + tmpBounds.height, color);
+        } else {
+            // world matrix calculated by the transform system this frame
+            lines.rect(transformSystem.getWorldMatrix(entityId, worldMatrix), transform.width, transform.height, color);
+        }
+        drawnCount++;
     }
 
     // -- public --
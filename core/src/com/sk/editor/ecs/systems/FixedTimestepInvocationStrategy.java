@@ -0,0 +1,96 @@
+package com.sk.editor.ecs.systems;
+
+import com.artemis.BaseSystem;
+import com.artemis.SystemInvocationStrategy;
+import com.artemis.utils.Bag;
+
+/**
+ * Processes the {@link LogicSystem}s with a fixed delta as often as the accumulated frame time allows, then all
+ * other (render) systems once with the frame delta. {@link #getAlpha()} is the fraction of a step not yet simulated
+ * and can be used by render systems to interpolate between the last two logic states.
+ * <p>
+ * The frame time added per frame is clamped to {@link #getMaxFrameTime()} so a long frame (i.e. loading, a
+ * breakpoint) does not cause a burst of steps.
+ */
+public class FixedTimestepInvocationStrategy extends SystemInvocationStrategy {
+
+    private final Bag<BaseSystem> logicSystems = new Bag<>(), renderSystems = new Bag<>();
+    private float step, maxFrameTime;
+    private float accumulator, alpha;
+
+    /**
+     * @param ticksPerSecond the rate the logic systems are processed at
+     * @param maxFrameTime   the max amount of time in seconds simulated per frame
+     */
+    public FixedTimestepInvocationStrategy(int ticksPerSecond, float maxFrameTime) {
+        setTicksPerSecond(ticksPerSecond);
+        this.maxFrameTime = maxFrameTime;
+    }
+
+    @Override
+    protected void initialize() {
+        for (int i = 0, n = systems.size(); i < n; i++) {
+            BaseSystem system = systems.get(i);
+            if (system instanceof LogicSystem) logicSystems.add(system);
+            else renderSystems.add(system);
+        }
+    }
+
+    @Override
+    protected void process() {
+        float frameDelta = world.getDelta();
+
+        // logic
+        accumulator += Math.min(frameDelta, maxFrameTime);
+        if (!logicSystems.isEmpty()) {
+            world.setDelta(step);
+            while (accumulator >= step) {
+                processAll(logicSystems);
+                accumulator -= step;
+            }
+        } else accumulator %= step;
+        alpha = accumulator / step;
+
+        // render
+        world.setDelta(frameDelta);
+        processAll(renderSystems);
+    }
+
+    private void processAll(Bag<BaseSystem> systems) {
+        for (int i = 0, n = systems.size(); i < n; i++) {
+            BaseSystem system = systems.get(i);
+            if (!isEnabled(system)) continue;
+            updateEntityStates();
+            system.process();
+        }
+        updateEntityStates();
+    }
+
+    // -- public --
+
+    public void setTicksPerSecond(int ticksPerSecond) {
+        this.step = 1f / Math.max(ticksPerSecond, 1);
+    }
+
+    /**
+     * @return the fixed delta of the logic systems in seconds
+     */
+    public float getStep() {
+        return step;
+    }
+
+    public void setMaxFrameTime(float maxFrameTime) {
+        this.maxFrameTime = maxFrameTime;
+    }
+
+    public float getMaxFrameTime() {
+        return maxFrameTime;
+    }
+
+    /**
+     * @return the interpolation factor between the previous (0) and the current (1) logic state as of the last frame
+     */
+    public float getAlpha() {
+        return alpha;
+    }
+}
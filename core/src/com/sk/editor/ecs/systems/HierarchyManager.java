@@ -0,0 +1,162 @@
+package com.sk.editor.ecs.systems;
+
+import com.artemis.BaseEntitySystem;
+import com.artemis.ComponentMapper;
+import com.artemis.annotations.All;
+import com.artemis.utils.IntBag;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Logger;
+import com.sk.editor.ecs.components.Transform;
+import com.sk.editor.ui.logger.EditorLogger;
+
+import java.util.Arrays;
+
+/**
+ * Owns the parent/child relations of {@link Transform}s.
+ * <ul>
+ *     <li>on insertion (i.e. after loading) links parent and children in both directions</li>
+ *     <li>on removal detaches the transform from its parent and deletes its children, O(children)</li>
+ *     <li>collects reparenting done through the {@link Transform} api and notifies the
+ *     {@link HierarchyListener}s once per tick at the start of the next world process</li>
+ * </ul>
+ * Needs to be registered before any system reading the hierarchy.
+ */
+@All(Transform.class)
+public class HierarchyManager extends BaseEntitySystem {
+
+    private static final EditorLogger log = new EditorLogger(HierarchyManager.class.toString(), Logger.DEBUG);
+
+    private static final int NOT_PENDING = -2;
+
+    ComponentMapper<Transform> transformMapper;
+    ChangeTracker changeTracker;
+
+    private final Array<HierarchyListener> listeners = new Array<>();
+    /**
+     * by entity id: the parent id before the first change of this tick or {@link #NOT_PENDING}
+     */
+    private int[] oldParents = new int[0];
+    private final IntBag pending = new IntBag(), dispatching = new IntBag();
+
+    @Override
+    protected void processSystem() {
+        if (pending.isEmpty()) return;
+
+        // listeners may reparent again which is dispatched next tick
+        dispatching.clear();
+        dispatching.addAll(pending);
+        pending.clear();
+
+        for (int i = 0, n = dispatching.size(); i < n; i++) {
+            int id = dispatching.get(i);
+            int oldParent = oldParents[id];
+            oldParents[id] = NOT_PENDING;
+
+            Transform transform = transformMapper.getSafe(id, null);
+            if (transform == null || transform.parent == oldParent) continue; // removed or changed back
+            for (int j = 0; j < listeners.size; j++) listeners.get(j).parentChanged(id, oldParent, transform.parent);
+        }
+        dispatching.clear();
+    }
+
+    @Override
+    protected void inserted(int entityId) {
+        Transform transform = transformMapper.get(entityId);
+        transform.entity = getWorld().getEntity(entityId);
+        transform.mapper = transformMapper;
+        transform.hierarchy = this;
+        transform.changes = changeTracker;
+
+        // parent: might not be inserted yet when loading, so only fields are used
+        if (transform.parent != -1) {
+            Transform parent = transformMapper.create(transform.parent);
+            if (!parent.children.contains(entityId)) {
+                parent.children.add(entityId);
+            }
+            parent.setChildrenChanged(true);
+        }
+
+        // children
+        IntBag children = transform.children;
+        for (int i = 0, n = children.size(); i < n; i++) {
+            Transform child = transformMapper.create(children.get(i));
+            if (child.parent != entityId) {
+                if (child.parent != -1) log.error("Child " + children.get(i) + " of " + entityId + " has another parent.");
+                child.parent = entityId;
+                if (child.entity != null) child.invalidateWorld();
+            }
+        }
+    }
+
+    @Override
+    protected void removed(int entityId) {
+        // accessible since the transform is annotated with @DelayedComponentRemoval
+        Transform transform = transformMapper.getSafe(entityId, null);
+        if (transform == null) return;
+        if (entityId < oldParents.length) oldParents[entityId] = NOT_PENDING;
+
+        // detach from parent
+        Transform parent = transform.parent == -1 ? null : transformMapper.getSafe(transform.parent, null);
+        if (parent != null) {
+            parent.children.removeValue(entityId);
+            parent.setChildrenChanged(true);
+            changeTracker.markChanged(transform.parent);
+        }
+
+        // children die with their parent
+        IntBag children = transform.children;
+        for (int i = 0, n = children.size(); i < n; i++) {
+            int childId = children.get(i);
+            Transform child = transformMapper.getSafe(childId, null);
+            if (child != null) child.parent = -1;
+            getWorld().delete(childId);
+        }
+    }
+
+    // -- public --
+
+    /**
+     * Called by the {@link Transform} after its parent changed. Multiple changes of the same entity in one tick
+     * are reported once from the first old to the last new parent.
+     *
+     * @param oldParentId the parent before the change or -1
+     */
+    public void parentChanged(int entityId, int oldParentId) {
+        if (entityId >= oldParents.length) {
+            int oldLength = oldParents.length;
+            oldParents = Arrays.copyOf(oldParents, Math.max(entityId + 1, oldLength * 2));
+            Arrays.fill(oldParents, oldLength, oldParents.length, NOT_PENDING);
+        }
+        if (oldParents[entityId] != NOT_PENDING) return; // keeps the first old parent of this tick
+        oldParents[entityId] = oldParentId;
+        pending.add(entityId);
+    }
+
+    /**
+     * Called by the {@link Transform} after the index of a root changed. Notifies the listeners immediately.
+     */
+    public void rootIndexChanged(int entityId) {
+        for (int i = 0; i < listeners.size; i++) listeners.get(i).rootIndexChanged(entityId);
+    }
+
+    public void addListener(HierarchyListener listener) {
+        if (!listeners.contains(listener, true)) listeners.add(listener);
+    }
+
+    public void removeListener(HierarchyListener listener) {
+        listeners.removeValue(listener, true);
+    }
+
+    public interface HierarchyListener {
+        /**
+         * @param oldParentId -1 if it has been a root
+         * @param newParentId -1 if it is a root now
+         */
+        void parentChanged(int entityId, int oldParentId, int newParentId);
+
+        /**
+         * the index of a root changed and roots might have to be resorted
+         */
+        default void rootIndexChanged(int entityId) {}
+    }
+}
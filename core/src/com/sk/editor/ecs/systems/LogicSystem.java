@@ -0,0 +1,9 @@
+package com.sk.editor.ecs.systems;
+
+/**
+ * Marks a system as part of the simulation. Logic systems are processed by the
+ * {@link FixedTimestepInvocationStrategy} at a fixed rate with a constant delta,
+ * all other systems once per rendered frame.
+ */
+public interface LogicSystem {
+}
@@ -3,24 +3,80 @@ package com.sk.editor.ecs.systems;
 import com.artemis.ComponentMapper;
 import com.artemis.annotations.All;
 import com.artemis.annotations.Wire;
+import com.artemis.utils.IntBag;
+import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
-import com.badlogic.gdx.math.Vector2;
-import com.badlogic.gdx.utils.Pools;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.Affine2;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Logger;
+import com.badlogic.gdx.utils.ObjectIntMap;
 import com.badlogic.gdx.utils.ScreenUtils;
 import com.badlogic.gdx.utils.viewport.Viewport;
 import com.sk.editor.EditorManager;
 import com.sk.editor.ecs.components.Canvas;
 import com.sk.editor.ecs.components.Image;
 import com.sk.editor.ecs.components.Transform;
+import com.sk.editor.ecs.utils.RenderQueue;
+import com.sk.editor.ui.logger.EditorLogger;
 
+/**
+ * Renders the images of all root canvases in three stages:
+ * the hierarchy traversal emits one command per visible image into a {@link RenderQueue} with a packed
+ * 64-bit sort key, the queue is radix sorted and the submit stage feeds the batch.
+ * The batch is only flushed when the canvas (projection) or the texture changes.
+ * <p>
+ * Key layout from most to least significant bits:
+ * canvas order (12), then either draw order (36) and texture id (16) or texture id (16) and draw order (36)
+ * depending on the {@link BatchMode}.
+ * When a frame has more root canvases than the canvas bits can hold, the queue is submitted and the key space restarts.
+ * Canvases are still drawn in canvas order since every pass only holds later canvases than the previous one.
+ * Textures past the texture bits of a frame share the last texture id, in {@link BatchMode#TEXTURE} they form one
+ * group in hierarchy order, so only the flushes increase.
+ */
 @Wire(injectInherited = true)
 @All({Transform.class, Canvas.class})
 public class RenderSystem extends CanvasSystem {
+
+	/**
+	 * How the images of a root canvas are ordered for submission to the batch
+	 */
+	public enum BatchMode {
+		/** in hierarchy order. The batch flushes whenever consecutive images use different textures */
+		HIERARCHY,
+		/**
+		 * grouped by texture (i.e. atlas page) in order of first appearance. Keeps the hierarchy (sibling) order
+		 * inside each group. Least flushes but images of different textures may change their overlap.
+		 */
+		TEXTURE;
+	}
+
+	private static final int CANVAS_BITS = 12, ORDER_BITS = 36, TEXTURE_BITS = 16;
+	private static final int CANVAS_SHIFT = ORDER_BITS + TEXTURE_BITS;
+	private static final long ORDER_MASK = (1L << ORDER_BITS) - 1, TEXTURE_MASK = (1L << TEXTURE_BITS) - 1;
+	private static final int MAX_CANVASES = 1 << CANVAS_BITS;
+	private static final EditorLogger log = new EditorLogger(RenderSystem.class.toString(), Logger.DEBUG);
 	
 	ComponentMapper<Transform> transformMapper;
 	ComponentMapper<Canvas> canvasMapper;
 	ComponentMapper<Image> imageMapper;
+	TransformSystem transformSystem;
 	private SpriteBatch batch;
+	private final Affine2 worldMatrix = new Affine2();
+
+	private BatchMode batchMode = BatchMode.HIERARCHY;
+	private final RenderQueue queue = new RenderQueue(256);
+	/**
+	 * the root canvas entity ids of this frame by canvas order
+	 */
+	private final IntBag canvasIds = new IntBag();
+	/**
+	 * texture ids of this frame in order of first appearance
+	 */
+	private final ObjectIntMap<Texture> textureIds = new ObjectIntMap<>();
+	private final Array<Texture> textures = new Array<>();
+	private int canvasOrder, drawOrder;
+	private boolean loggedCanvasOverflow;
 	
 	public RenderSystem(SpriteBatch batch, EditorManager editorManager, Viewport ecsViewport) {
 		super(editorManager, ecsViewport);
@@ -37,9 +93,18 @@ public class RenderSystem extends CanvasSystem {
 		} else batch.flush();
 		batch.setColor(1,1,1,1);
 
-		// process
+		// traverse: fills the queue
+		queue.clear();
+		canvasIds.clear();
+		textureIds.clear();
+		textures.clear();
+		drawOrder = 0;
 		super.processSystem();
 
+		// sort & submit
+		queue.sort();
+		submit();
+
 		//reset batch
 		if(!isDrawing)batch.end();
 		else batch.flush();
@@ -47,8 +112,20 @@ public class RenderSystem extends CanvasSystem {
 
 	@Override
 	protected void processRootCanvas(int entityId, Transform transform, Canvas canvas) {
-		batch.flush();
-		batch.setProjectionMatrix(canvas.combined());
+		if(canvasIds.size() >= MAX_CANVASES){
+			if(!loggedCanvasOverflow){
+				loggedCanvasOverflow = true;
+				log.info("More than " + MAX_CANVASES + " root canvases - submitting in multiple passes.");
+			}
+			// draw the canvases so far and restart the key space for the remaining ones
+			queue.sort();
+			submit();
+			queue.clear();
+			canvasIds.clear();
+			drawOrder = 0;
+		}
+		canvasOrder = canvasIds.size();
+		canvasIds.add(entityId);
 
 		// processes canvases and applies the viewport
 		super.processRootCanvas(entityId, transform, canvas);
@@ -60,30 +137,72 @@ public class RenderSystem extends CanvasSystem {
 		Image image = imageMapper.getSafe(entityId, null);
 		if(transform == null)return;
 
-		batch.flush();
-
-		// draw self
+		// emit draw command
 		if(image != null && image.getRegion() != null){
-			Vector2 worldCoord = Pools.obtain(Vector2.class);
-			worldCoord.set(transform.x, transform.y);
-			transform.parentToWorldCoord(worldCoord); // TODO: improve with transform matrix ?
-
-			batch.draw(image.getRegion(),
-					worldCoord.x,
-					worldCoord.y,
-					0,
-					0,
-					transform.width,
-					transform.height,
-					1f,
-					1f,
-					0);
-			batch.flush();
-			Pools.free(worldCoord);
+			queue.add(createKey(canvasOrder, drawOrder++, getTextureId(image.getRegion().getTexture())), entityId);
 		}
 
 		// sort & process children
 		super.process(entityId);
 	}
 
+	private long createKey(long canvas, long order, long texture){
+		order &= ORDER_MASK;
+		texture &= TEXTURE_MASK;
+		if(batchMode == BatchMode.TEXTURE)
+			return canvas << CANVAS_SHIFT | texture << ORDER_BITS | order;
+		return canvas << CANVAS_SHIFT | order << TEXTURE_BITS | texture;
+	}
+
+	private int getTextureId(Texture texture){
+		int id = textureIds.get(texture, -1);
+		if(id == -1){
+			id = (int)Math.min(textures.size, TEXTURE_MASK);
+			textureIds.put(texture, id);
+			textures.add(texture);
+		}
+		return id;
+	}
+
+	/**
+	 * feeds the sorted commands to the batch. Switches projection and viewport on canvas changes.
+	 */
+	private void submit(){
+		int currentCanvas = -1;
+		for(int i = 0, n = queue.size(); i < n; i++){
+			int canvasOrder = (int)(queue.getKey(i) >>> CANVAS_SHIFT);
+			int entityId = queue.getValue(i);
+
+			if(canvasOrder != currentCanvas){
+				currentCanvas = canvasOrder;
+				Canvas canvas = canvasMapper.get(canvasIds.get(canvasOrder));
+				// the previous canvas has to be drawn before changing the viewport
+				batch.flush();
+				batch.setProjectionMatrix(canvas.combined());
+				canvas.apply();
+			}
+			draw(entityId, transformMapper.get(entityId), imageMapper.get(entityId).getRegion());
+		}
+	}
+
+	private void draw(int entityId, Transform transform, TextureRegion region){
+		// world matrix calculated by the transform system this frame
+		batch.draw(region,
+				transform.width,
+				transform.height,
+				transformSystem.getWorldMatrix(entityId, worldMatrix));
+		drawnCount++;
+	}
+
+	// -- public --
+
+	public void setBatchMode(BatchMode batchMode){
+		if(batchMode == null)batchMode = BatchMode.HIERARCHY;
+		this.batchMode = batchMode;
+	}
+
+	public BatchMode getBatchMode(){
+		return batchMode;
+	}
+
 }
@@ -0,0 +1,92 @@
+package com.sk.editor.ecs.systems;
+
+import com.artemis.BaseEntitySystem;
+import com.artemis.ComponentMapper;
+import com.artemis.annotations.All;
+import com.artemis.utils.IntBag;
+import com.sk.editor.ecs.components.Canvas;
+import com.sk.editor.ecs.components.Transform;
+
+/**
+ * Keeps the root canvases sorted by their index. The list is only rebuilt after a canvas has been inserted or
+ * removed, a canvas became a root or a child, or the index of a root changed.
+ * Shared by all {@link CanvasSystem}s.
+ */
+@All({Transform.class, Canvas.class})
+public class RootCanvasManager extends BaseEntitySystem implements HierarchyManager.HierarchyListener {
+
+    ComponentMapper<Transform> transformMapper;
+    ComponentMapper<Canvas> canvasMapper;
+    HierarchyManager hierarchyManager;
+
+    private final IntBag roots = new IntBag();
+    private boolean dirty = true;
+
+    @Override
+    protected void initialize() {
+        hierarchyManager.addListener(this);
+        setEnabled(false); // only reacts to events
+    }
+
+    @Override
+    protected void processSystem() {
+    }
+
+    @Override
+    protected void inserted(int entityId) {
+        dirty = true;
+    }
+
+    @Override
+    protected void removed(int entityId) {
+        dirty = true;
+    }
+
+    @Override
+    public void parentChanged(int entityId, int oldParentId, int newParentId) {
+        if (canvasMapper.has(entityId) && (oldParentId == -1 || newParentId == -1)) dirty = true;
+    }
+
+    @Override
+    public void rootIndexChanged(int entityId) {
+        if (canvasMapper.has(entityId)) dirty = true;
+    }
+
+    /**
+     * forces a rebuild on the next access
+     */
+    public void invalidate() {
+        dirty = true;
+    }
+
+    /**
+     * @return the root canvas ids sorted by index, drawn first to last. Do not modify.
+     */
+    public IntBag getRootCanvases() {
+        if (dirty) rebuild();
+        return roots;
+    }
+
+    private void rebuild() {
+        roots.clear();
+        IntBag actives = getEntityIds();
+        int[] ids = actives.getData();
+        for (int i = 0, s = actives.size(); s > i; i++) {
+            if (transformMapper.get(ids[i]).isRoot()) roots.add(ids[i]);
+        }
+
+        // stable insertion sort by index: typically just a hand full
+        int[] data = roots.getData();
+        for (int i = 1, n = roots.size(); i < n; i++) {
+            int id = data[i];
+            int index = transformMapper.get(id).getIndex();
+            int j = i - 1;
+            while (j >= 0 && transformMapper.get(data[j]).getIndex() > index) {
+                data[j + 1] = data[j];
+                j--;
+            }
+            data[j + 1] = id;
+        }
+        dirty = false;
+    }
+}
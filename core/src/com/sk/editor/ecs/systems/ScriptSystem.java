@@ -17,7 +17,7 @@ import com.sk.editor.scripting.ScriptManager;
  * not direct Script objects themselves
  */
 @All()
-public class ScriptSystem extends BaseEntitySystem {
+public class ScriptSystem extends BaseEntitySystem implements LogicSystem {
 
     ComponentMapper<Transform> transformMapper;
     Array<Class<?>> scriptSubTypes = new Array<>();
@@ -3,26 +3,288 @@ package com.sk.editor.ecs.systems;
 import com.artemis.BaseEntitySystem;
 import com.artemis.ComponentMapper;
 import com.artemis.annotations.All;
+import com.artemis.utils.IntBag;
+import com.badlogic.gdx.math.Affine2;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Logger;
-import com.badlogic.gdx.utils.reflect.ClassReflection;
-import com.badlogic.gdx.utils.reflect.Field;
-import com.badlogic.gdx.utils.reflect.ReflectionException;
+import com.sk.editor.config.Config;
 import com.sk.editor.ecs.components.Transform;
+import com.sk.editor.ecs.utils.SpatialIndex;
 import com.sk.editor.ui.logger.EditorLogger;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the local to world matrices of all transforms once per frame in hierarchy order (parents
+ * before children) and stores them in a flat array addressed by entity id.
+ * Also keeps the {@link SpatialIndex} of each root up to date with the world bounds of changed transforms
+ * and aggregates the world bounds of each subtree (used for culling).
+ * Independent roots (i.e. root canvases) can be processed in parallel, see {@link #setParallel(boolean)}.
+ * Needs to be processed before any system reading the matrices.
+ */
 @All(Transform.class)
 public class TransformSystem extends BaseEntitySystem {
 
     private static final EditorLogger log = new EditorLogger(TransformSystem.class.toString(), Logger.DEBUG);
 
+    /**
+     * floats per matrix: m00, m01, m02, m10, m11, m12
+     */
+    public static final int MATRIX_STRIDE = 6;
+
     ComponentMapper<Transform> transformMapper;
 
+    private float[] worldMatrices = new float[MATRIX_STRIDE * 128];
+    /**
+     * by entity id: true once the entity has been part of a pass, reset on removal so recycled ids
+     * do not read the slots of the former entity
+     */
+    private boolean[] processed = new boolean[128];
+    /**
+     * by entity id * 4: minX, minY, maxX, maxY of the entity itself as of its last change
+     */
+    private float[] worldBounds = new float[4 * 128];
+    /**
+     * by entity id * 4: minX, minY, maxX, maxY of the entity and all its descendants
+     */
+    private float[] subtreeBounds = new float[4 * 128];
+    private final SpatialIndex spatialIndex = new SpatialIndex();
+
+    /**
+     * if true the roots are processed in parallel on the {@link ForkJoinPool#commonPool()}
+     */
+    private boolean parallel = Config.PARALLEL_HIERARCHY_UPDATE;
+    private final IntBag roots = new IntBag();
+    private final ArrayList<HierarchyTask> tasks = new ArrayList<>();
+    private final Array<HierarchyTask> freeTasks = new Array<>();
+
     @Override
-    protected void processSystem() {}
+    protected void processSystem() {
+        IntBag actives = getEntityIds();
+        int[] ids = actives.getData();
+
+        // collect the roots, every parent is calculated before its children
+        roots.clear();
+        int maxId = -1;
+        for (int i = 0, s = actives.size(); s > i; i++) {
+            maxId = Math.max(maxId, ids[i]);
+            if (!transformMapper.get(ids[i]).hasParent()) roots.add(ids[i]);
+        }
+        if (maxId < 0) return;
+
+        // arrays must not grow while tasks are running
+        ensureCapacity(maxId);
+        spatialIndex.ensureCapacity(maxId);
+
+        for (int i = 0, n = roots.size(); i < n; i++) {
+            HierarchyTask task = freeTasks.size > 0 ? freeTasks.pop() : new HierarchyTask();
+            task.rootId = roots.get(i);
+            tasks.add(task);
+        }
+
+        // subtrees of different roots do not share any state
+        if (parallel && tasks.size() > 1) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            for (int i = 0, n = tasks.size(); i < n; i++) tasks.get(i).compute();
+        }
+
+        // the spatial index is updated on this thread in root order so the result is deterministic
+        for (int i = 0, n = tasks.size(); i < n; i++) {
+            HierarchyTask task = tasks.get(i);
+            IntBag changed = task.changed;
+            for (int j = 0, m = changed.size(); j < m; j++) {
+                int id = changed.get(j);
+                int b = id * 4;
+                spatialIndex.update(task.rootId, id, worldBounds[b], worldBounds[b + 1], worldBounds[b + 2], worldBounds[b + 3]);
+            }
+            task.reinitialize();
+            freeTasks.add(task);
+        }
+        tasks.clear();
+    }
+
+    /**
+     * Processes the subtree of a single root. Only writes to the transforms of the subtree and their slots in the
+     * per entity arrays, which are sized beforehand. Changes to the spatial index are collected and applied after
+     * all tasks completed.
+     */
+    private class HierarchyTask extends RecursiveAction {
+
+        int rootId;
+        /**
+         * draw order counter. Queries of the spatial index are per root so orders only need to be unique per root.
+         */
+        int order;
+        final IntBag changed = new IntBag();
+        final Rectangle tmpBounds = new Rectangle();
+
+        @Override
+        protected void compute() {
+            order = 0;
+            changed.clear();
+            process(rootId, transformMapper.get(rootId));
+        }
+
+        private void process(int entityId, Transform transform) {
+            // children are sorted before assigning the draw order
+            if (transform.childrenChanged()) transform.sortChildren();
+
+            // parent is valid here, so this only recalculates itself if dirty
+            store(entityId, transform.getWorldTransform());
+            processed[entityId] = true;
+
+            // own bounds
+            int b = entityId * 4;
+            spatialIndex.setOrder(entityId, order++);
+            if (transform.boundsChanged() || spatialIndex.getRoot(entityId) != rootId) {
+                transform.getWorldBounds(tmpBounds);
+                worldBounds[b] = tmpBounds.x;
+                worldBounds[b + 1] = tmpBounds.y;
+                worldBounds[b + 2] = tmpBounds.x + tmpBounds.width;
+                worldBounds[b + 3] = tmpBounds.y + tmpBounds.height;
+                transform.setBoundsChanged(false);
+                changed.add(entityId);
+            }
+
+            // subtree bounds start with its own bounds
+            float[] sb = subtreeBounds;
+            System.arraycopy(worldBounds, b, sb, b, 4);
+
+            IntBag children = transform.getChildIds();
+            for (int i = 0, n = children.size(); i < n; i++) {
+                int childId = children.get(i);
+                Transform child = transformMapper.getSafe(childId, null);
+                if (child == null) continue;
+                process(childId, child);
+
+                // aggregate
+                int c = childId * 4;
+                sb[b] = Math.min(sb[b], sb[c]);
+                sb[b + 1] = Math.min(sb[b + 1], sb[c + 1]);
+                sb[b + 2] = Math.max(sb[b + 2], sb[c + 2]);
+                sb[b + 3] = Math.max(sb[b + 3], sb[c + 3]);
+            }
+        }
+    }
+
+    private void ensureCapacity(int maxId) {
+        int matrices = (maxId + 1) * MATRIX_STRIDE;
+        if (matrices > worldMatrices.length)
+            worldMatrices = Arrays.copyOf(worldMatrices, Math.max(worldMatrices.length * 2, matrices));
+        if (maxId + 1 > processed.length)
+            processed = Arrays.copyOf(processed, Math.max(processed.length * 2, maxId + 1));
+        int bounds = (maxId + 1) * 4;
+        if (bounds > worldBounds.length) {
+            int length = Math.max(worldBounds.length * 2, bounds);
+            worldBounds = Arrays.copyOf(worldBounds, length);
+            subtreeBounds = Arrays.copyOf(subtreeBounds, length);
+        }
+    }
+
+    private void store(int entityId, Affine2 matrix) {
+        int offset = entityId * MATRIX_STRIDE;
+        float[] m = worldMatrices;
+        m[offset] = matrix.m00;
+        m[offset + 1] = matrix.m01;
+        m[offset + 2] = matrix.m02;
+        m[offset + 3] = matrix.m10;
+        m[offset + 4] = matrix.m11;
+        m[offset + 5] = matrix.m12;
+    }
 
     @Override
-    protected void inserted(int entityId) {
-        Transform transform = transformMapper.get(entityId);
-        transform.entity =  getWorld().getEntity(entityId);
+    protected void removed(int entityId) {
+        if (entityId < processed.length) processed[entityId] = false;
+        spatialIndex.remove(entityId);
+    }
+
+    // -- public --
+
+    /**
+     * @param parallel true to process the roots in parallel, false for a deterministic single threaded pass.
+     * Both produce the same results.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * @param entityId
+     * @param out the matrix to set
+     * @return the given matrix set to the world matrix of the entity as calculated in the last pass.
+     * Falls back to the transforms' cached matrix if the entity has not been part of a pass yet.
+     */
+    public Affine2 getWorldMatrix(int entityId, Affine2 out) {
+        if (!isProcessed(entityId)) return out.set(transformMapper.get(entityId).getWorldTransform());
+        float[] m = worldMatrices;
+        int offset = entityId * MATRIX_STRIDE;
+        out.m00 = m[offset];
+        out.m01 = m[offset + 1];
+        out.m02 = m[offset + 2];
+        out.m10 = m[offset + 3];
+        out.m11 = m[offset + 4];
+        out.m12 = m[offset + 5];
+        return out;
+    }
+
+    /**
+     * @return true if the entity has been part of a pass since it was created,
+     * i.e. its slots in {@link #getWorldMatrices()} are valid
+     */
+    public boolean isProcessed(int entityId) {
+        return entityId >= 0 && entityId < processed.length && processed[entityId];
+    }
+
+    /**
+     * @param entityId
+     * @param minX the min x of the view
+     * @param minY the min y of the view
+     * @param maxX the max x of the view
+     * @param maxY the max y of the view
+     * @return true if the world bounds of the entity and all its descendants as of the last pass overlap the
+     * given view. Always true if the entity has not been part of a pass yet, see {@link #isProcessed(int)}.
+     */
+    public boolean overlapsSubtree(int entityId, float minX, float minY, float maxX, float maxY) {
+        if (!isProcessed(entityId)) return true;
+        int b = entityId * 4;
+        float[] sb = subtreeBounds;
+        return sb[b] <= maxX && sb[b + 2] >= minX && sb[b + 1] <= maxY && sb[b + 3] >= minY;
+    }
+
+    /**
+     * @param out the rectangle to set
+     * @return the given rectangle set to the world bounds of the entity and all its descendants as of the last pass.
+     * Empty if the entity has not been part of a pass yet, see {@link #isProcessed(int)}.
+     */
+    public Rectangle getSubtreeBounds(int entityId, Rectangle out) {
+        if (!isProcessed(entityId)) return out.set(0, 0, 0, 0);
+        int b = entityId * 4;
+        float[] sb = subtreeBounds;
+        return out.set(sb[b], sb[b + 1], sb[b + 2] - sb[b], sb[b + 3] - sb[b + 1]);
+    }
+
+    /**
+     * The spatial index of the world bounds per root as of the last pass.
+     */
+    public SpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    /**
+     * The world matrices of the last pass. The matrix of an entity starts at entityId * {@link #MATRIX_STRIDE}
+     * and is only valid if {@link #isProcessed(int)}. The array might be replaced when growing, do not store it.
+     */
+    public float[] getWorldMatrices() {
+        return worldMatrices;
     }
 }
@@ -1,34 +1,150 @@
 package com.sk.editor.ecs.utils;
 
+import com.artemis.Entity;
 import com.artemis.World;
+import com.artemis.io.ArchetypeMapper;
 import com.artemis.io.ComponentLookupSerializer;
 import com.artemis.io.JsonArtemisSerializer;
 import com.artemis.io.SaveFileFormat;
+import com.artemis.utils.Bag;
+import com.artemis.utils.IntBag;
 import com.badlogic.gdx.utils.Json;
 import com.badlogic.gdx.utils.JsonValue;
-import com.badlogic.gdx.utils.reflect.ClassReflection;
-import com.badlogic.gdx.utils.reflect.Field;
-import com.badlogic.gdx.utils.reflect.Method;
-import com.badlogic.gdx.utils.reflect.ReflectionException;
+import com.badlogic.gdx.utils.JsonWriter;
+import com.badlogic.gdx.utils.ObjectMap;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 
 public class CustomJsonArtemisSerializer extends JsonArtemisSerializer {
+
+    /**
+     * the private artemis members, resolved once
+     */
+    private static final Field LOOKUP, JSON;
+    private static final MethodHandle BUILD;
+    /**
+     * the types artemis registers serializers for on its json, as of artemis-odb 2.3.0 (see artemisVersion in
+     * build.gradle). Check JsonArtemisSerializer when updating artemis: serializers of types missing here are lost.
+     */
+    private static final Class<?>[] ARTEMIS_TYPES = {SaveFileFormat.ComponentIdentifiers.class, Bag.class, IntBag.class,
+            Entity.class, ArchetypeMapper.class, ArchetypeMapper.TransmuterEntry.class};
+
+    static {
+        try {
+            LOOKUP = JsonArtemisSerializer.class.getDeclaredField("lookup");
+            LOOKUP.setAccessible(true);
+            JSON = JsonArtemisSerializer.class.getDeclaredField("json");
+            JSON.setAccessible(true);
+            Method build = SaveFileFormat.ComponentIdentifiers.class.getDeclaredMethod("build");
+            build.setAccessible(true);
+            BUILD = MethodHandles.lookup().unreflect(build);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * component classes by name of the current class loader generation
+     */
+    private static final ObjectMap<String, Class<?>> classes = new ObjectMap<>();
+    private static ClassLoader classLoader;
+
+    private final CodecJson json = new CodecJson();
+
     public CustomJsonArtemisSerializer(World world) {
         super(world);
+        // replace the json to dispatch the components to their codecs, with the configuration artemis made
+        try {
+            Json artemisJson = (Json) JSON.get(this);
+            json.setIgnoreUnknownFields(true);
+            for (Class type : ARTEMIS_TYPES) {
+                Json.Serializer artemisSerializer = artemisJson.getSerializer(type);
+                if (artemisSerializer == null) throw new IllegalStateException("Artemis registers no json serializer for "
+                        + type.getName() + " anymore, update ARTEMIS_TYPES to the artemis version.");
+                json.setSerializer(type, artemisSerializer);
+            }
+            JSON.set(this, json);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+
         // override registration
         ComponentLookupSerializer serializer = createComponentLookupSerializer();
         // for future safety sake override field
-        Field lookup = null;
         try {
-            lookup = ClassReflection.getDeclaredField(JsonArtemisSerializer.class, "lookup");
-            lookup.setAccessible(true);
-            lookup.set(this, serializer);
-            lookup.setAccessible(false);
-        } catch (ReflectionException e) {
+            LOOKUP.set(this, serializer);
+        } catch (IllegalAccessException e) {
             throw new RuntimeException(e);
         }
         register(SaveFileFormat.ComponentIdentifiers.class, serializer);
     }
 
+    /**
+     * Artemis writes and reads components with {@link Json#writeFields(Object)} and
+     * {@link Json#readFields(Object, JsonValue)}, which ignore serializers registered for the component type.
+     * The codec is used for those calls instead.
+     */
+    public <T> CustomJsonArtemisSerializer registerCodec(Class<T> type, JsonComponentCodec<T> codec) {
+        json.codecs.put(type, codec);
+        return this;
+    }
+
+    /**
+     * Forgets the resolved component classes, i.e. after the scripts have been reloaded.
+     * Also happens implicitly when the context class loader changed.
+     */
+    public static synchronized void invalidateClassCache() {
+        classes.clear();
+        classLoader = null;
+    }
+
+    /**
+     * uses the context class loader (set by ScriptManager) instead of artemis Reflection class loader
+     * which includes external project classes
+     */
+    private static synchronized Class<?> resolve(String name) throws ClassNotFoundException {
+        ClassLoader current = Thread.currentThread().getContextClassLoader();
+        if (current != classLoader) { // new generation
+            classes.clear();
+            classLoader = current;
+        }
+        Class<?> c = classes.get(name);
+        if (c == null) {
+            c = Class.forName(name, true, current);
+            classes.put(name, c);
+        }
+        return c;
+    }
+
+
+    /**
+     * dispatches writing and reading the fields of components to the registered codec of their exact type
+     */
+    private static class CodecJson extends Json {
+
+        final ObjectMap<Class<?>, JsonComponentCodec<?>> codecs = new ObjectMap<>();
+
+        CodecJson() {
+            super(JsonWriter.OutputType.json);
+        }
+
+        @Override
+        public void writeFields(Object object) {
+            JsonComponentCodec<Object> codec = (JsonComponentCodec<Object>) codecs.get(object.getClass());
+            if (codec != null) codec.write(this, object);
+            else super.writeFields(object);
+        }
+
+        @Override
+        public void readFields(Object object, JsonValue jsonMap) {
+            JsonComponentCodec<Object> codec = (JsonComponentCodec<Object>) codecs.get(object.getClass());
+            if (codec != null) codec.read(this, jsonMap, object);
+            else super.readFields(object, jsonMap);
+        }
+    }
 
     /**
      * to be able to de-/serialize ScriptManagers' classLoader classes
@@ -43,36 +159,15 @@ public class CustomJsonArtemisSerializer extends JsonArtemisSerializer {
                 JsonValue component = jsonData.child;
                 try {
                     while (component != null) {
-                        // use context class loader (set by ScriptManager) instead of artemis Reflection class loader
-                        // which includes external project classes to be able to de-/serialize ScriptManagers' classLoader classes
-                        //Class c = ClassReflection.forName(component.name());
-                        Class c = Class.forName(component.name(), true, Thread.currentThread().getContextClassLoader());
+                        Class c = resolve(component.name());
                         ci.typeToName.put(c, component.asString());
                         component = component.next;
                     }
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-
-                Method build = null;
-                try {
-                    build = ClassReflection.getDeclaredMethod(SaveFileFormat.ComponentIdentifiers.class, "build");
-                } catch (ReflectionException e) {
+                    BUILD.invoke(ci);
+                } catch (Throwable e) {
                     throw new RuntimeException(e);
                 }
-
-                try {
-                    build.setAccessible(true);
-                    build.invoke(ci);
-                    build.setAccessible(false);
-                } catch (ReflectionException e) {
-                    throw new RuntimeException(e);
-                }
-
-                //ci.build();
                 return ci;
-
-                //return super.read(json, jsonData, type);
             }
         };
     }
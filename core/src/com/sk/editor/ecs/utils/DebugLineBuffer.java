@@ -0,0 +1,105 @@
+package com.sk.editor.ecs.utils;
+
+import com.badlogic.gdx.graphics.glutils.ImmediateModeRenderer;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.math.Affine2;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates colored line segments in one reusable float buffer (x, y, packed color per vertex)
+ * and submits them to a {@link ShapeRenderer} in {@link ShapeRenderer.ShapeType#Line} mode without intermediate flushes.
+ */
+public class DebugLineBuffer {
+
+    private static final int VERTEX_SIZE = 3;
+
+    private float[] vertices;
+    private int size;
+
+    public DebugLineBuffer() {
+        this(1024);
+    }
+
+    /**
+     * @param initialLines the amount of lines to reserve space for
+     */
+    public DebugLineBuffer(int initialLines) {
+        vertices = new float[Math.max(initialLines, 1) * 2 * VERTEX_SIZE];
+    }
+
+    public void line(float x1, float y1, float x2, float y2, float color) {
+        ensureCapacity(2 * VERTEX_SIZE);
+        float[] v = vertices;
+        int i = size;
+        v[i] = x1;
+        v[i + 1] = y1;
+        v[i + 2] = color;
+        v[i + 3] = x2;
+        v[i + 4] = y2;
+        v[i + 5] = color;
+        size += 2 * VERTEX_SIZE;
+    }
+
+    /**
+     * adds the outline of the rectangle (0, 0, width, height) transformed by the matrix
+     */
+    public void rect(Affine2 m, float width, float height, float color) {
+        float x1 = m.m02, y1 = m.m12; // (0, 0)
+        float x2 = m.m00 * width + m.m02, y2 = m.m10 * width + m.m12; // (width, 0)
+        float x3 = m.m00 * width + m.m01 * height + m.m02, y3 = m.m10 * width + m.m11 * height + m.m12; // (width, height)
+        float x4 = m.m01 * height + m.m02, y4 = m.m11 * height + m.m12; // (0, height)
+        line(x1, y1, x2, y2, color);
+        line(x2, y2, x3, y3, color);
+        line(x3, y3, x4, y4, color);
+        line(x4, y4, x1, y1, color);
+    }
+
+    /**
+     * adds the outline of the axis aligned rectangle
+     */
+    public void rect(float minX, float minY, float maxX, float maxY, float color) {
+        line(minX, minY, maxX, minY, color);
+        line(maxX, minY, maxX, maxY, color);
+        line(maxX, maxY, minX, maxY, color);
+        line(minX, maxY, minX, minY, color);
+    }
+
+    /**
+     * Feeds all lines to the renderer, which has to be drawing lines. Only flushes if the renderer is full.
+     * Does not clear the buffer.
+     */
+    public void submit(ShapeRenderer renderer) {
+        ImmediateModeRenderer out = renderer.getRenderer();
+        float[] v = vertices;
+        for (int i = 0; i < size; i += 2 * VERTEX_SIZE) {
+            if (out.getMaxVertices() - out.getNumVertices() < 2) renderer.flush();
+            out.color(v[i + 2]);
+            out.vertex(v[i], v[i + 1], 0);
+            out.color(v[i + 5]);
+            out.vertex(v[i + 3], v[i + 4], 0);
+        }
+    }
+
+    /**
+     * @return the amount of lines
+     */
+    public int size() {
+        return size / (2 * VERTEX_SIZE);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // -- private --
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > vertices.length)
+            vertices = Arrays.copyOf(vertices, Math.max(vertices.length * 2, size + additional));
+    }
+}
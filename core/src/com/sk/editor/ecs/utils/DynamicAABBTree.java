@@ -0,0 +1,405 @@
+package com.sk.editor.ecs.utils;
+
+import com.artemis.utils.IntBag;
+
+import java.util.Arrays;
+
+/**
+ * A dynamic bounding volume hierarchy of axis aligned bounding boxes (based on the box2d b2DynamicTree).
+ * Leaves (proxies) store fattened boxes so small movements do not require a reinsertion.
+ * The tree is kept balanced using rotations so point and rectangle queries run in O(log n).
+ * Nodes are stored in flat primitive arrays; the ids returned by {@link #createProxy} stay valid until destroyed.
+ */
+public class DynamicAABBTree {
+
+    public static final int NULL_NODE = -1;
+
+    private float[] minX, minY, maxX, maxY;
+    /**
+     * parent is reused as next-pointer of the free list
+     */
+    private int[] parent, child1, child2, height, userData;
+    private int capacity, nodeCount;
+    private int root = NULL_NODE, freeList;
+    private int[] stack = new int[64];
+    private final float margin;
+
+    public DynamicAABBTree() {
+        this(4f, 16);
+    }
+
+    /**
+     * @param margin          the amount each side of a proxy is fattened by
+     * @param initialCapacity the initial amount of nodes
+     */
+    public DynamicAABBTree(float margin, int initialCapacity) {
+        this.margin = margin;
+        this.capacity = 0;
+        minX = new float[0];
+        minY = new float[0];
+        maxX = new float[0];
+        maxY = new float[0];
+        parent = new int[0];
+        child1 = new int[0];
+        child2 = new int[0];
+        height = new int[0];
+        userData = new int[0];
+        grow(Math.max(initialCapacity, 2));
+    }
+
+    // -- proxies --
+
+    /**
+     * @param userData the value returned by queries for this proxy
+     * @return the proxy id
+     */
+    public int createProxy(float minX, float minY, float maxX, float maxY, int userData) {
+        int proxyId = allocateNode();
+        setFatBounds(proxyId, minX, minY, maxX, maxY);
+        this.userData[proxyId] = userData;
+        height[proxyId] = 0;
+        insertLeaf(proxyId);
+        return proxyId;
+    }
+
+    public void destroyProxy(int proxyId) {
+        removeLeaf(proxyId);
+        freeNode(proxyId);
+    }
+
+    /**
+     * Reinserts the proxy only if the new bounds leave its fattened bounds.
+     * @return true if the proxy has been reinserted
+     */
+    public boolean moveProxy(int proxyId, float minX, float minY, float maxX, float maxY) {
+        if (this.minX[proxyId] <= minX && this.minY[proxyId] <= minY
+                && this.maxX[proxyId] >= maxX && this.maxY[proxyId] >= maxY) return false;
+
+        removeLeaf(proxyId);
+        setFatBounds(proxyId, minX, minY, maxX, maxY);
+        insertLeaf(proxyId);
+        return true;
+    }
+
+    public int getUserData(int proxyId) {
+        return userData[proxyId];
+    }
+
+    /**
+     * @return the amount of proxies
+     */
+    public int size() {
+        return (nodeCount + 1) / 2;
+    }
+
+    public boolean isEmpty() {
+        return root == NULL_NODE;
+    }
+
+    /**
+     * @return the height of the tree. 0 if empty or only one proxy
+     */
+    public int getHeight() {
+        return root == NULL_NODE ? 0 : height[root];
+    }
+
+
+    // -- queries --
+
+    /**
+     * Adds the user data of all proxies whose fattened bounds contain the point. Unordered.
+     * @return the given bag
+     */
+    public IntBag queryPoint(float x, float y, IntBag out) {
+        return queryRect(x, y, x, y, out);
+    }
+
+    /**
+     * Adds the user data of all proxies whose fattened bounds overlap the rectangle. Unordered.
+     * @return the given bag
+     */
+    public IntBag queryRect(float minX, float minY, float maxX, float maxY, IntBag out) {
+        if (root == NULL_NODE) return out;
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            if (this.maxX[node] < minX || this.minX[node] > maxX
+                    || this.maxY[node] < minY || this.minY[node] > maxY) continue;
+
+            if (isLeaf(node)) {
+                out.add(userData[node]);
+            } else {
+                if (top + 2 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+                stack[top++] = child1[node];
+                stack[top++] = child2[node];
+            }
+        }
+        return out;
+    }
+
+    public void clear() {
+        root = NULL_NODE;
+        nodeCount = 0;
+        for (int i = 0; i < capacity - 1; i++) {
+            parent[i] = i + 1;
+            height[i] = -1;
+        }
+        parent[capacity - 1] = NULL_NODE;
+        height[capacity - 1] = -1;
+        freeList = 0;
+    }
+
+
+    // -- nodes --
+
+    private boolean isLeaf(int node) {
+        return child1[node] == NULL_NODE;
+    }
+
+    private void setFatBounds(int node, float minX, float minY, float maxX, float maxY) {
+        this.minX[node] = minX - margin;
+        this.minY[node] = minY - margin;
+        this.maxX[node] = maxX + margin;
+        this.maxY[node] = maxY + margin;
+    }
+
+    private void setUnion(int node, int a, int b) {
+        minX[node] = Math.min(minX[a], minX[b]);
+        minY[node] = Math.min(minY[a], minY[b]);
+        maxX[node] = Math.max(maxX[a], maxX[b]);
+        maxY[node] = Math.max(maxY[a], maxY[b]);
+    }
+
+    private float perimeter(int node) {
+        return 2 * (maxX[node] - minX[node] + maxY[node] - minY[node]);
+    }
+
+    private float unionPerimeter(int a, int b) {
+        float width = Math.max(maxX[a], maxX[b]) - Math.min(minX[a], minX[b]);
+        float height = Math.max(maxY[a], maxY[b]) - Math.min(minY[a], minY[b]);
+        return 2 * (width + height);
+    }
+
+    private int allocateNode() {
+        if (freeList == NULL_NODE) grow(capacity * 2);
+        int node = freeList;
+        freeList = parent[node];
+        parent[node] = NULL_NODE;
+        child1[node] = NULL_NODE;
+        child2[node] = NULL_NODE;
+        height[node] = 0;
+        userData[node] = -1;
+        nodeCount++;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        parent[node] = freeList;
+        height[node] = -1;
+        freeList = node;
+        nodeCount--;
+    }
+
+    private void grow(int newCapacity) {
+        minX = Arrays.copyOf(minX, newCapacity);
+        minY = Arrays.copyOf(minY, newCapacity);
+        maxX = Arrays.copyOf(maxX, newCapacity);
+        maxY = Arrays.copyOf(maxY, newCapacity);
+        parent = Arrays.copyOf(parent, newCapacity);
+        child1 = Arrays.copyOf(child1, newCapacity);
+        child2 = Arrays.copyOf(child2, newCapacity);
+        height = Arrays.copyOf(height, newCapacity);
+        userData = Arrays.copyOf(userData, newCapacity);
+
+        // link new nodes into the free list
+        for (int i = capacity; i < newCapacity - 1; i++) {
+            parent[i] = i + 1;
+            height[i] = -1;
+        }
+        parent[newCapacity - 1] = NULL_NODE;
+        height[newCapacity - 1] = -1;
+        freeList = capacity;
+        capacity = newCapacity;
+    }
+
+    private void insertLeaf(int leaf) {
+        if (root == NULL_NODE) {
+            root = leaf;
+            parent[root] = NULL_NODE;
+            return;
+        }
+
+        // find the best sibling by the surface area heuristic
+        int index = root;
+        while (!isLeaf(index)) {
+            int c1 = child1[index];
+            int c2 = child2[index];
+
+            float area = perimeter(index);
+            float combinedArea = unionPerimeter(index, leaf);
+
+            // cost of creating a new parent for this node and the new leaf
+            float cost = 2 * combinedArea;
+            // minimum cost of pushing the leaf further down the tree
+            float inheritanceCost = 2 * (combinedArea - area);
+
+            float cost1 = descendCost(c1, leaf) + inheritanceCost;
+            float cost2 = descendCost(c2, leaf) + inheritanceCost;
+
+            if (cost < cost1 && cost < cost2) break;
+            index = cost1 < cost2 ? c1 : c2;
+        }
+        int sibling = index;
+
+        // create a new parent
+        int oldParent = parent[sibling];
+        int newParent = allocateNode();
+        parent[newParent] = oldParent;
+        setUnion(newParent, leaf, sibling);
+        height[newParent] = height[sibling] + 1;
+
+        if (oldParent != NULL_NODE) {
+            if (child1[oldParent] == sibling) child1[oldParent] = newParent;
+            else child2[oldParent] = newParent;
+        } else {
+            root = newParent;
+        }
+        child1[newParent] = sibling;
+        child2[newParent] = leaf;
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+
+        refit(parent[leaf]);
+    }
+
+    private float descendCost(int child, int leaf) {
+        if (isLeaf(child)) return unionPerimeter(child, leaf);
+        return unionPerimeter(child, leaf) - perimeter(child);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL_NODE;
+            return;
+        }
+
+        int oldParent = parent[leaf];
+        int grandParent = parent[oldParent];
+        int sibling = child1[oldParent] == leaf ? child2[oldParent] : child1[oldParent];
+
+        if (grandParent != NULL_NODE) {
+            // connect sibling to grand parent
+            if (child1[grandParent] == oldParent) child1[grandParent] = sibling;
+            else child2[grandParent] = sibling;
+            parent[sibling] = grandParent;
+            freeNode(oldParent);
+            refit(grandParent);
+        } else {
+            root = sibling;
+            parent[sibling] = NULL_NODE;
+            freeNode(oldParent);
+        }
+    }
+
+    /**
+     * walks up from the given node balancing and recalculating heights and bounds
+     */
+    private void refit(int index) {
+        while (index != NULL_NODE) {
+            index = balance(index);
+            int c1 = child1[index];
+            int c2 = child2[index];
+            height[index] = 1 + Math.max(height[c1], height[c2]);
+            setUnion(index, c1, c2);
+            index = parent[index];
+        }
+    }
+
+    /**
+     * Performs a left or right rotation if node a is imbalanced.
+     * @return the new root of the sub tree
+     */
+    private int balance(int a) {
+        if (isLeaf(a) || height[a] < 2) return a;
+
+        int b = child1[a];
+        int c = child2[a];
+        int balance = height[c] - height[b];
+
+        // rotate c up
+        if (balance > 1) {
+            int f = child1[c];
+            int g = child2[c];
+
+            child1[c] = a;
+            parent[c] = parent[a];
+            parent[a] = c;
+            replaceChild(parent[c], a, c);
+
+            if (height[f] > height[g]) {
+                child2[c] = f;
+                child2[a] = g;
+                parent[g] = a;
+                setUnion(a, b, g);
+                setUnion(c, a, f);
+                height[a] = 1 + Math.max(height[b], height[g]);
+                height[c] = 1 + Math.max(height[a], height[f]);
+            } else {
+                child2[c] = g;
+                child2[a] = f;
+                parent[f] = a;
+                setUnion(a, b, f);
+                setUnion(c, a, g);
+                height[a] = 1 + Math.max(height[b], height[f]);
+                height[c] = 1 + Math.max(height[a], height[g]);
+            }
+            return c;
+        }
+
+        // rotate b up
+        if (balance < -1) {
+            int d = child1[b];
+            int e = child2[b];
+
+            child1[b] = a;
+            parent[b] = parent[a];
+            parent[a] = b;
+            replaceChild(parent[b], a, b);
+
+            if (height[d] > height[e]) {
+                child2[b] = d;
+                child1[a] = e;
+                parent[e] = a;
+                setUnion(a, c, e);
+                setUnion(b, a, d);
+                height[a] = 1 + Math.max(height[c], height[e]);
+                height[b] = 1 + Math.max(height[a], height[d]);
+            } else {
+                child2[b] = e;
+                child1[a] = d;
+                parent[d] = a;
+                setUnion(a, c, d);
+                setUnion(b, a, e);
+                height[a] = 1 + Math.max(height[c], height[d]);
+                height[b] = 1 + Math.max(height[a], height[e]);
+            }
+            return b;
+        }
+        return a;
+    }
+
+    /**
+     * replaces the old child of the given parent with the new child or sets the new child as root if parent is null
+     */
+    private void replaceChild(int parentNode, int oldChild, int newChild) {
+        if (parentNode == NULL_NODE) {
+            root = newChild;
+        } else if (child1[parentNode] == oldChild) {
+            child1[parentNode] = newChild;
+        } else {
+            child2[parentNode] = newChild;
+        }
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.sk.editor.ecs.utils;
+
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.JsonValue;
+
+/**
+ * Writes and reads the fields of a component type in the artemis json format instead of libGDX' reflective
+ * field walk. Register with {@link CustomJsonArtemisSerializer#registerCodec(Class, JsonComponentCodec)}.
+ */
+public interface JsonComponentCodec<T> {
+
+    /**
+     * @param json the object of the component has already been started and is ended afterwards
+     */
+    void write(Json json, T component);
+
+    /**
+     * @param component the instance created by artemis for the entity, to be filled
+     */
+    void read(Json json, JsonValue jsonData, T component);
+}
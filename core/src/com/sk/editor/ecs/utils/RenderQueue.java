@@ -0,0 +1,104 @@
+package com.sk.editor.ecs.utils;
+
+import java.util.Arrays;
+
+/**
+ * A flat queue of draw commands. Each command is a 64-bit sort key with an int payload (i.e. an entity id).
+ * Sorting is a stable LSD radix sort over the primitive key array, so the queue does not allocate once grown.
+ * Keys are compared unsigned.
+ */
+public class RenderQueue {
+
+    private static final int RADIX_BITS = 8, BUCKETS = 1 << RADIX_BITS, MASK = BUCKETS - 1;
+
+    private long[] keys, tmpKeys;
+    private int[] values, tmpValues;
+    private final int[] counts = new int[BUCKETS];
+    private int size;
+
+    public RenderQueue() {
+        this(64);
+    }
+
+    public RenderQueue(int initialCapacity) {
+        initialCapacity = Math.max(initialCapacity, 1);
+        keys = new long[initialCapacity];
+        tmpKeys = new long[initialCapacity];
+        values = new int[initialCapacity];
+        tmpValues = new int[initialCapacity];
+    }
+
+    public void add(long key, int value) {
+        if (size == keys.length) grow(size * 2);
+        keys[size] = key;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Sorts the commands by key ascending. Commands with equal keys keep their insertion order.
+     * Byte passes in which all keys are equal are skipped.
+     */
+    public void sort() {
+        if (size < 2) return;
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            long[] keys = this.keys;
+            int[] values = this.values;
+
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < size; i++) counts[(int) (keys[i] >>> shift) & MASK]++;
+            if (counts[(int) (keys[0] >>> shift) & MASK] == size) continue; // all equal in this byte
+
+            // prefix sum
+            for (int b = 0, sum = 0; b < BUCKETS; b++) {
+                int count = counts[b];
+                counts[b] = sum;
+                sum += count;
+            }
+
+            // distribute
+            long[] tmpKeys = this.tmpKeys;
+            int[] tmpValues = this.tmpValues;
+            for (int i = 0; i < size; i++) {
+                int destination = counts[(int) (keys[i] >>> shift) & MASK]++;
+                tmpKeys[destination] = keys[i];
+                tmpValues[destination] = values[i];
+            }
+
+            // swap buffers
+            this.keys = tmpKeys;
+            this.tmpKeys = keys;
+            this.values = tmpValues;
+            this.tmpValues = values;
+        }
+    }
+
+    public long getKey(int index) {
+        return keys[index];
+    }
+
+    public int getValue(int index) {
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // -- private --
+
+    private void grow(int newCapacity) {
+        keys = Arrays.copyOf(keys, newCapacity);
+        values = Arrays.copyOf(values, newCapacity);
+        tmpKeys = new long[newCapacity];
+        tmpValues = new int[newCapacity];
+    }
+}
@@ -0,0 +1,167 @@
+package com.sk.editor.ecs.utils;
+
+import com.artemis.utils.IntBag;
+import com.badlogic.gdx.utils.IntMap;
+
+import java.util.Arrays;
+
+/**
+ * Keeps one {@link DynamicAABBTree} of world space bounds per root entity (typically a root canvas).
+ * All per entity data is stored in arrays addressed by entity id.
+ * <p>
+ * Query results are sorted top-most first, which is the reverse of the draw order set via
+ * {@link #setOrder(int, int)} and therefore the order children are hit in.
+ */
+public class SpatialIndex {
+
+    private static final int NONE = -1;
+
+    private final IntMap<DynamicAABBTree> trees = new IntMap<>();
+    private final float margin;
+
+    /** by entity id */
+    private int[] proxies = new int[0], roots = new int[0], orders = new int[0];
+    /** by entity id * 4: minX, minY, maxX, maxY */
+    private float[] bounds = new float[0];
+    private long[] sortKeys = new long[32];
+
+    public SpatialIndex() {
+        this(4f);
+    }
+
+    /**
+     * @param margin the amount the bounds are fattened by to avoid reinsertion on small movements
+     */
+    public SpatialIndex(float margin) {
+        this.margin = margin;
+    }
+
+    // -- update --
+
+    /**
+     * @param order the position in draw order of the root, higher is drawn later (on top)
+     */
+    public void setOrder(int entityId, int order) {
+        ensureCapacity(entityId);
+        orders[entityId] = order;
+    }
+
+    /**
+     * Inserts or moves the entities' world bounds into the tree of the given root.
+     * Moves it between trees if the root changed.
+     */
+    public void update(int rootId, int entityId, float minX, float minY, float maxX, float maxY) {
+        ensureCapacity(entityId);
+        int oldRoot = roots[entityId];
+        if (oldRoot != NONE && oldRoot != rootId) remove(entityId);
+
+        int b = entityId * 4;
+        bounds[b] = minX;
+        bounds[b + 1] = minY;
+        bounds[b + 2] = maxX;
+        bounds[b + 3] = maxY;
+
+        if (roots[entityId] == NONE) {
+            DynamicAABBTree tree = trees.get(rootId);
+            if (tree == null) trees.put(rootId, tree = new DynamicAABBTree(margin, 16));
+            proxies[entityId] = tree.createProxy(minX, minY, maxX, maxY, entityId);
+            roots[entityId] = rootId;
+        } else {
+            trees.get(rootId).moveProxy(proxies[entityId], minX, minY, maxX, maxY);
+        }
+    }
+
+    /**
+     * removes the entity from its tree. Does nothing if not present.
+     */
+    public void remove(int entityId) {
+        if (entityId >= roots.length) return;
+        int rootId = roots[entityId];
+        if (rootId == NONE) return;
+
+        DynamicAABBTree tree = trees.get(rootId);
+        tree.destroyProxy(proxies[entityId]);
+        if (tree.isEmpty()) trees.remove(rootId);
+        roots[entityId] = NONE;
+        proxies[entityId] = NONE;
+    }
+
+    /**
+     * The exact world bounds as of the last update. The bounds of an entity start at entityId * 4 (minX, minY,
+     * maxX, maxY). The array might be replaced when growing, do not store it.
+     */
+    public float[] getBounds() {
+        return bounds;
+    }
+
+    /**
+     * @return the root id whose tree contains the entity or -1
+     */
+    public int getRoot(int entityId) {
+        return entityId < roots.length ? roots[entityId] : NONE;
+    }
+
+    public void clear() {
+        trees.clear();
+        Arrays.fill(roots, NONE);
+        Arrays.fill(proxies, NONE);
+    }
+
+
+    // -- queries --
+
+    /**
+     * Adds all entities of the roots' tree whose world bounds contain the point.
+     * The bounds are axis aligned, so rotated entities need an exact test afterwards.
+     * @return the given bag, the added ids sorted top-most first
+     */
+    public IntBag queryPoint(int rootId, float x, float y, IntBag out) {
+        return queryRect(rootId, x, y, x, y, out);
+    }
+
+    /**
+     * Adds all entities of the roots' tree whose world bounds overlap the rectangle.
+     * @return the given bag, the added ids sorted top-most first
+     */
+    public IntBag queryRect(int rootId, float minX, float minY, float maxX, float maxY, IntBag out) {
+        DynamicAABBTree tree = trees.get(rootId);
+        if (tree == null) return out;
+
+        int start = out.size();
+        tree.queryRect(minX, minY, maxX, maxY, out);
+
+        // filter fattened candidates by their exact bounds and sort by order
+        int[] data = out.getData();
+        int count = 0;
+        for (int i = start, n = out.size(); i < n; i++) {
+            int id = data[i];
+            int b = id * 4;
+            if (bounds[b + 2] < minX || bounds[b] > maxX || bounds[b + 3] < minY || bounds[b + 1] > maxY) continue;
+            if (count == sortKeys.length) sortKeys = Arrays.copyOf(sortKeys, count * 2);
+            // negated order so ascending sort yields top-most first
+            sortKeys[count++] = ((long) -orders[id] << 32) | (id & 0xffffffffL);
+        }
+        Arrays.sort(sortKeys, 0, count);
+
+        // write back
+        while (out.size() > start) out.removeIndex(out.size() - 1);
+        for (int i = 0; i < count; i++) out.add((int) sortKeys[i]);
+        return out;
+    }
+
+    /**
+     * Grows the per entity arrays to fit the given id. Updating entities up to that id from different threads
+     * is safe as long as each root is only updated by one thread and no tree has to be created.
+     */
+    public void ensureCapacity(int entityId) {
+        if (entityId < roots.length) return;
+        int oldLength = roots.length;
+        int newLength = Math.max(entityId + 1, oldLength * 2);
+        roots = Arrays.copyOf(roots, newLength);
+        proxies = Arrays.copyOf(proxies, newLength);
+        orders = Arrays.copyOf(orders, newLength);
+        bounds = Arrays.copyOf(bounds, newLength * 4);
+        Arrays.fill(roots, oldLength, newLength, NONE);
+        Arrays.fill(proxies, oldLength, newLength, NONE);
+    }
+}
@@ -0,0 +1,144 @@
+package com.sk.editor.ecs.utils;
+
+import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Null;
+import com.badlogic.gdx.utils.ObjectMap;
+
+/**
+ * Resolves deserialized texture regions to one shared instance per unique region:
+ * atlas regions through a name lookup per atlas instead of {@link TextureAtlas#findRegion(String, int)}'s linear scan,
+ * texture regions through their {@link Key}. All textures and atlases have to be loaded to the assetManager.
+ * Synchronized, as scene chunks are decoded concurrently.
+ */
+public class TextureRegionCache {
+
+    private final AssetManager assetManager;
+    /**
+     * by atlas path: the regions by name
+     */
+    private final ObjectMap<String, ObjectMap<String, Array<TextureAtlas.AtlasRegion>>> atlases = new ObjectMap<>();
+    private final ObjectMap<Key, TextureRegion> regions = new ObjectMap<>();
+
+    public TextureRegionCache(AssetManager assetManager) {
+        this.assetManager = assetManager;
+    }
+
+    /**
+     * @return Maybe null. The region of the atlas loaded at the path
+     */
+    public synchronized @Null TextureAtlas.AtlasRegion getAtlasRegion(String atlasPath, String name, int index) {
+        ObjectMap<String, Array<TextureAtlas.AtlasRegion>> byName = atlases.get(atlasPath);
+        if (byName == null) {
+            byName = new ObjectMap<>();
+            TextureAtlas atlas = assetManager.get(atlasPath, TextureAtlas.class, true);
+            for (TextureAtlas.AtlasRegion region : atlas.getRegions()) {
+                Array<TextureAtlas.AtlasRegion> named = byName.get(region.name);
+                if (named == null) byName.put(region.name, named = new Array<>(1));
+                named.add(region);
+            }
+            atlases.put(atlasPath, byName);
+        }
+
+        // same as the atlas: the first region with the name and index
+        Array<TextureAtlas.AtlasRegion> named = byName.get(name);
+        if (named == null) return null;
+        for (TextureAtlas.AtlasRegion region : named) if (region.index == index) return region;
+        return null;
+    }
+
+    /**
+     * @return the shared region of the texture loaded at the path
+     */
+    public synchronized TextureRegion getRegion(String texturePath, float u, float v, float u2, float v2,
+                                                int regionWidth, int regionHeight) {
+        Key key = new Key(texturePath, null, 0, u, v, u2, v2, regionWidth, regionHeight);
+        TextureRegion region = regions.get(key);
+        if (region == null) {
+            region = new TextureRegion();
+            region.setTexture(assetManager.get(texturePath, Texture.class, true));
+            region.setRegion(u, v, u2, v2);
+            region.setRegionWidth(regionWidth);
+            region.setRegionHeight(regionHeight);
+            regions.put(key, region);
+        }
+        return region;
+    }
+
+    /**
+     * forgets all regions, i.e. after assets have been unloaded
+     */
+    public synchronized void clear() {
+        atlases.clear();
+        regions.clear();
+    }
+
+    /**
+     * Identifies a region by what is serialized of it
+     */
+    public static class Key {
+        public final String path;
+        /**
+         * the atlas region name or null for texture regions
+         */
+        public final @Null String name;
+        public final int index;
+        public final float u, v, u2, v2;
+        public final int regionWidth, regionHeight;
+
+        public Key(String path, @Null String name, int index, float u, float v, float u2, float v2,
+                   int regionWidth, int regionHeight) {
+            this.path = path;
+            this.name = name;
+            this.index = index;
+            this.u = u;
+            this.v = v;
+            this.u2 = u2;
+            this.v2 = v2;
+            this.regionWidth = regionWidth;
+            this.regionHeight = regionHeight;
+        }
+
+        public static Key of(TextureRegion region) {
+            String path = region.getTexture().toString();
+            if (region instanceof TextureAtlas.AtlasRegion) {
+                TextureAtlas.AtlasRegion atlasRegion = (TextureAtlas.AtlasRegion) region;
+                return new Key(path, atlasRegion.name, atlasRegion.index, 0, 0, 0, 0, 0, 0);
+            }
+            return new Key(path, null, 0, region.getU(), region.getV(), region.getU2(), region.getV2(),
+                    region.getRegionWidth(), region.getRegionHeight());
+        }
+
+        public boolean isAtlasRegion() {
+            return name != null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return index == key.index && Float.compare(u, key.u) == 0 && Float.compare(v, key.v) == 0
+                    && Float.compare(u2, key.u2) == 0 && Float.compare(v2, key.v2) == 0
+                    && regionWidth == key.regionWidth && regionHeight == key.regionHeight
+                    && path.equals(key.path) && (name == null ? key.name == null : name.equals(key.name));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = path.hashCode();
+            result = 31 * result + (name == null ? 0 : name.hashCode());
+            result = 31 * result + index;
+            result = 31 * result + Float.floatToIntBits(u);
+            result = 31 * result + Float.floatToIntBits(v);
+            result = 31 * result + Float.floatToIntBits(u2);
+            result = 31 * result + Float.floatToIntBits(v2);
+            result = 31 * result + regionWidth;
+            result = 31 * result + regionHeight;
+            return result;
+        }
+    }
+}
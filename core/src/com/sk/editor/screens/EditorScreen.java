@@ -104,6 +104,9 @@ public class EditorScreen extends ScreenAdapter {
 
         ecsStage = new Stage(ecsViewport, batch);
         uiStage = new UIStage(uiViewport, batch);
+        // idle rendering: actors with running actions request the next frame while acting
+        ecsStage.setActionsRequestRendering(true);
+        uiStage.setActionsRequestRendering(true);
 
         // set gdx input processor
         Gdx.input.setInputProcessor(
@@ -142,7 +145,11 @@ public class EditorScreen extends ScreenAdapter {
         // TODO: ecs manager has to inject dependencies for script manager loaded classes on each recompile and load
         // TODO: ecs manager has to handle script manager loaded classes' annotations on each recompile and load
         ecsManager = new ECSManager(editor, uiStage, ecsViewport);
+        scriptManager.addReloadListener(classLoader -> ecsManager.reloadScriptComponents());
         ecsCamera.addCameraListener(ecsManager);
+        ecsCamera.addCameraListener(camera -> {
+            if(ecsCamera.isChanged())EditorManager.requestRendering();
+        });
 
         // input
         inputManager = new InputManager(uiStage, ecsStage, ecsManager);
@@ -412,6 +419,7 @@ public class EditorScreen extends ScreenAdapter {
         //roundedCorners.dispose();
         //roundedCornersShadow.dispose();
         ecsManager.dispose();
+        scriptManager.dispose();
     }
 
 
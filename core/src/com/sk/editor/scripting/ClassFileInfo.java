@@ -0,0 +1,297 @@
+package com.sk.editor.scripting;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectSet;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * What the compiler needs to know about a .class file, read from its bytes without loading the class:
+ * the referenced classes (from the constant pool and member descriptors) and a hash of its ABI,
+ * i.e. everything dependent classes are compiled against.
+ */
+public class ClassFileInfo {
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int ACC_PRIVATE = 0x0002, ACC_SYNTHETIC = 0x1000;
+
+    // constant pool tags
+    private static final int UTF8 = 1, INTEGER = 3, FLOAT = 4, LONG = 5, DOUBLE = 6, CLASS = 7, STRING = 8,
+            FIELD_REF = 9, METHOD_REF = 10, INTERFACE_METHOD_REF = 11, NAME_AND_TYPE = 12, METHOD_HANDLE = 15,
+            METHOD_TYPE = 16, DYNAMIC = 17, INVOKE_DYNAMIC = 18, MODULE = 19, PACKAGE = 20;
+
+    /**
+     * binary names (a.b.Outer$Inner)
+     */
+    public String name, superName;
+    public final Array<String> interfaces = new Array<>();
+    /**
+     * binary names of all classes referenced by the class
+     */
+    public final ObjectSet<String> dependencies = new ObjectSet<>();
+    /**
+     * binary names of the annotations of the class, its fields and methods
+     */
+    public final ObjectSet<String> annotations = new ObjectSet<>();
+    /**
+     * hash of the non-private declarations including their thrown exceptions, annotations and annotation
+     * defaults, and of the access flags of the class and its member classes
+     */
+    public byte[] abiHash;
+    /**
+     * true if the class declares compile time constants, which are inlined into dependent classes
+     * and so do not show up as their dependency
+     */
+    public boolean hasConstants;
+
+    private ClassFileInfo() {}
+
+    public static ClassFileInfo read(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != MAGIC) throw new IOException("Not a class file.");
+        in.readUnsignedShort(); // minor
+        in.readUnsignedShort(); // major
+
+        ClassFileInfo info = new ClassFileInfo();
+
+        // -- constant pool --
+        int count = in.readUnsignedShort();
+        int[] tags = new int[count];
+        String[] utf8 = new String[count];
+        Object[] constants = new Object[count];
+        int[] refs = new int[count]; // class name or descriptor index
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            tags[i] = tag;
+            switch (tag) {
+                case UTF8: utf8[i] = in.readUTF(); break;
+                case INTEGER: constants[i] = in.readInt(); break;
+                case FLOAT: constants[i] = in.readFloat(); break;
+                case LONG: constants[i++] = in.readLong(); break; // takes two entries
+                case DOUBLE: constants[i++] = in.readDouble(); break;
+                case CLASS: refs[i] = in.readUnsignedShort(); break;
+                case STRING: refs[i] = in.readUnsignedShort(); break;
+                case NAME_AND_TYPE: in.readUnsignedShort(); refs[i] = in.readUnsignedShort(); break;
+                case METHOD_TYPE: refs[i] = in.readUnsignedShort(); break;
+                case METHOD_HANDLE: in.readUnsignedByte(); in.readUnsignedShort(); break;
+                case FIELD_REF: case METHOD_REF: case INTERFACE_METHOD_REF: case DYNAMIC: case INVOKE_DYNAMIC:
+                    in.readInt(); break;
+                case MODULE: case PACKAGE: in.readUnsignedShort(); break;
+                default: throw new IOException("Unknown constant pool tag " + tag + ".");
+            }
+        }
+        for (int i = 1; i < count; i++) {
+            if (tags[i] == CLASS) addClassName(utf8[refs[i]], info.dependencies);
+            else if (tags[i] == NAME_AND_TYPE || tags[i] == METHOD_TYPE) addDescriptor(utf8[refs[i]], info.dependencies);
+        }
+
+        // -- class --
+        Array<String> abi = new Array<>();
+        int access = in.readUnsignedShort();
+        info.name = toBinaryName(utf8[refs[in.readUnsignedShort()]]);
+        int superIndex = in.readUnsignedShort();
+        info.superName = superIndex == 0 ? null : toBinaryName(utf8[refs[superIndex]]);
+        abi.add("class " + access + " " + info.superName);
+        int interfaceCount = in.readUnsignedShort();
+        for (int i = 0; i < interfaceCount; i++) {
+            String interfaceName = toBinaryName(utf8[refs[in.readUnsignedShort()]]);
+            info.interfaces.add(interfaceName);
+            abi.add("implements " + interfaceName);
+        }
+
+        // -- members --
+        for (int m = 0; m < 2; m++) {
+            boolean fields = m == 0;
+            int memberCount = in.readUnsignedShort();
+            for (int i = 0; i < memberCount; i++) {
+                int memberAccess = in.readUnsignedShort();
+                String memberName = utf8[in.readUnsignedShort()];
+                String descriptor = utf8[in.readUnsignedShort()];
+                addDescriptor(descriptor, info.dependencies);
+
+                String signature = null;
+                Object constant = null;
+                StringBuilder attributes = new StringBuilder(); // thrown exceptions, annotation default and annotations
+                int attributeCount = in.readUnsignedShort();
+                for (int a = 0; a < attributeCount; a++) {
+                    String attribute = utf8[in.readUnsignedShort()];
+                    int length = in.readInt();
+                    if ("Signature".equals(attribute)) {
+                        signature = utf8[in.readUnsignedShort()];
+                    } else if (isAnnotations(attribute)) {
+                        readAnnotations(in, utf8, constants, info, attributes.append(' '));
+                    } else if (!fields && "Exceptions".equals(attribute)) {
+                        attributes.append(" throws");
+                        int exceptionCount = in.readUnsignedShort();
+                        for (int e = 0; e < exceptionCount; e++) {
+                            attributes.append(' ').append(toBinaryName(utf8[refs[in.readUnsignedShort()]]));
+                        }
+                    } else if (!fields && "AnnotationDefault".equals(attribute)) {
+                        readElementValue(in, utf8, constants, info, attributes.append(" default "));
+                    } else if (fields && "ConstantValue".equals(attribute)) {
+                        int index = in.readUnsignedShort();
+                        constant = tags[index] == STRING ? utf8[refs[index]] : constants[index];
+                    } else {
+                        in.skipBytes(length);
+                    }
+                }
+
+                if ((memberAccess & (ACC_PRIVATE | ACC_SYNTHETIC)) != 0) continue;
+                if (constant != null) info.hasConstants = true;
+                abi.add((fields ? "field " : "method ") + memberAccess + " " + memberName + " " + descriptor
+                        + " " + signature + " " + constant + attributes);
+            }
+        }
+
+        // class signature (generics), annotations and nested classes,
+        // the remaining attributes do not affect dependent classes
+        int attributeCount = in.readUnsignedShort();
+        for (int a = 0; a < attributeCount; a++) {
+            String attribute = utf8[in.readUnsignedShort()];
+            int length = in.readInt();
+            if ("Signature".equals(attribute)) {
+                abi.add("signature " + utf8[in.readUnsignedShort()]);
+            } else if (isAnnotations(attribute)) {
+                StringBuilder annotations = new StringBuilder("annotations ");
+                readAnnotations(in, utf8, constants, info, annotations);
+                abi.add(annotations.toString());
+            } else if ("InnerClasses".equals(attribute)) {
+                readInnerClasses(in, utf8, refs, info, abi);
+            } else {
+                in.skipBytes(length);
+            }
+        }
+
+        info.dependencies.remove(info.name);
+        info.abiHash = hash(abi);
+        return info;
+    }
+
+    // -- private --
+
+    private static boolean isAnnotations(String attribute) {
+        return "RuntimeVisibleAnnotations".equals(attribute) || "RuntimeInvisibleAnnotations".equals(attribute);
+    }
+
+    /**
+     * The access flags of nested classes in their class header lack private, protected and static,
+     * the real ones are only in the InnerClasses attribute. Adds the entries of the class itself and its member classes.
+     */
+    private static void readInnerClasses(DataInputStream in, String[] utf8, int[] refs, ClassFileInfo info,
+                                         Array<String> abi) throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            int innerIndex = in.readUnsignedShort();
+            int outerIndex = in.readUnsignedShort();
+            int nameIndex = in.readUnsignedShort();
+            int access = in.readUnsignedShort();
+            String inner = toBinaryName(utf8[refs[innerIndex]]);
+            String outer = outerIndex == 0 ? null : toBinaryName(utf8[refs[outerIndex]]);
+            if (!inner.equals(info.name) && !info.name.equals(outer)) continue;
+            abi.add("inner " + access + " " + inner + " " + outer + " " + (nameIndex == 0 ? null : utf8[nameIndex]));
+        }
+    }
+
+    /**
+     * adds the annotations with their values to the builder
+     */
+    private static void readAnnotations(DataInputStream in, String[] utf8, Object[] constants, ClassFileInfo info,
+                                        StringBuilder out) throws IOException {
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) readAnnotation(in, utf8, constants, info, true, out);
+    }
+
+    /**
+     * @param declared false for annotations nested in annotation values, which only count as dependency
+     */
+    private static void readAnnotation(DataInputStream in, String[] utf8, Object[] constants, ClassFileInfo info,
+                                       boolean declared, StringBuilder out) throws IOException {
+        String descriptor = utf8[in.readUnsignedShort()]; // La/b/C;
+        addDescriptor(descriptor, info.dependencies);
+        if (declared) info.annotations.add(toBinaryName(descriptor.substring(1, descriptor.length() - 1)));
+        out.append('@').append(descriptor).append('(');
+        int pairs = in.readUnsignedShort();
+        for (int i = 0; i < pairs; i++) {
+            if (i > 0) out.append(',');
+            out.append(utf8[in.readUnsignedShort()]).append('=');
+            readElementValue(in, utf8, constants, info, out);
+        }
+        out.append(')');
+    }
+
+    private static void readElementValue(DataInputStream in, String[] utf8, Object[] constants, ClassFileInfo info,
+                                         StringBuilder out) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case 'e':
+                String enumType = utf8[in.readUnsignedShort()];
+                addDescriptor(enumType, info.dependencies);
+                out.append(enumType).append('.').append(utf8[in.readUnsignedShort()]);
+                break;
+            case 'c':
+                String classType = utf8[in.readUnsignedShort()];
+                addDescriptor(classType, info.dependencies);
+                out.append(classType).append(".class");
+                break;
+            case '@': readAnnotation(in, utf8, constants, info, false, out); break;
+            case '[':
+                int count = in.readUnsignedShort();
+                out.append('{');
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) out.append(',');
+                    readElementValue(in, utf8, constants, info, out);
+                }
+                out.append('}');
+                break;
+            case 's': out.append('"').append(utf8[in.readUnsignedShort()]).append('"'); break;
+            default: out.append((char) tag).append(constants[in.readUnsignedShort()]); // primitive constant
+        }
+    }
+
+    /**
+     * @param name internal name (a/b/C) or array descriptor ([La/b/C;)
+     */
+    private static void addClassName(String name, ObjectSet<String> out) {
+        if (name.startsWith("[")) addDescriptor(name, out);
+        else out.add(toBinaryName(name));
+    }
+
+    /**
+     * adds the classes of a field or method descriptor, i.e. (ILa/b/C;)[La/b/D;
+     */
+    private static void addDescriptor(String descriptor, ObjectSet<String> out) {
+        for (int i = 0, n = descriptor.length(); i < n; i++) {
+            if (descriptor.charAt(i) != 'L') continue;
+            int end = descriptor.indexOf(';', i);
+            if (end == -1) return;
+            out.add(toBinaryName(descriptor.substring(i + 1, end)));
+            i = end;
+        }
+    }
+
+    private static String toBinaryName(String internalName) {
+        return internalName.replace('/', '.');
+    }
+
+    /**
+     * order independent, members may be reordered without changing the abi
+     */
+    private static byte[] hash(Array<String> abi) {
+        abi.sort();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (String entry : abi) {
+                digest.update(entry.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
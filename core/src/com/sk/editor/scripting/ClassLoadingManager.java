@@ -1,40 +1,77 @@
 package com.sk.editor.scripting;
 
 import com.badlogic.gdx.utils.*;
-import com.badlogic.gdx.utils.reflect.ClassReflection;
-import com.badlogic.gdx.utils.reflect.ReflectionException;
-import org.reflections.Reflections;
 
-import javax.tools.*;
-import java.io.File;
-import java.net.URL;
+import java.io.IOException;
 import java.net.URLClassLoader;
-import java.nio.file.Files;
 import java.nio.file.Path;
 
 public class ClassLoadingManager {
 
     private static final Logger log = new Logger(ClassLoadingManager.class.toString(), Logger.DEBUG);
 
-    private final String CLASS_EXTENSION = ".class";
     private Path classPath;
-    private FileTreeWalker fileWalker;
     private URLClassLoader classLoader;
     private SnapshotArray<Class<?>> loadedClasses = new SnapshotArray<>();
+    private TypeIndex typeIndex = TypeIndex.EMPTY;
 
 
     /**
-     * @param classPath the directory to load the .class files from (bin dir)
-     * @param fileWalker
+     * @param classPath the directory the compiled classes belong to (bin dir), see {@link ScriptClassLoader}
      */
-    public ClassLoadingManager(Path classPath, FileTreeWalker fileWalker){
-        this.fileWalker = fileWalker;
+    public ClassLoadingManager(Path classPath){
         this.classPath = classPath;
     }
 
+    /**
+     * Loads the classes with a new class loader defining them from their bytecode, nothing is read from disk.
+     * @param classBytes by binary name: the bytecode of the classes, see {@link CompilationManager#getClassBytes()}
+     */
+    public void loadAllClasses(ObjectMap<String, byte[]> classBytes) throws Exception{
+        activate(prepare(classBytes));
+    }
 
-    public void loadAllClasses() throws Exception{
-        loadClassesFromDir(this.classPath);
+    /**
+     * Creates a new class loader and loads the classes with it without making them current.
+     * Can be called on any thread, see {@link #activate(Generation)}. Also builds the {@link TypeIndex} of the classes.
+     * @param classBytes by binary name: the bytecode of the classes, see {@link CompilationManager#getClassBytes()}
+     */
+    public Generation prepare(ObjectMap<String, byte[]> classBytes){
+        Generation generation = new Generation(createClassLoader(classBytes));
+        ObjectMap<String, ClassFileInfo> infos = new ObjectMap<>();
+        ObjectMap<String, Class<?>> classes = new ObjectMap<>();
+        for(ObjectMap.Entry<String, byte[]> entry : classBytes){
+            try {
+                Class<?> cls = generation.classLoader.loadClass(entry.key);
+                generation.classes.add(cls);
+                classes.put(entry.key, cls);
+                infos.put(entry.key, ClassFileInfo.read(entry.value));
+            } catch (ClassNotFoundException | LinkageError | IOException e) {
+                generation.close();
+                throw new GdxRuntimeException("Could not load class: className: " + entry.key, e);
+            }
+        }
+        generation.typeIndex = TypeIndex.build(infos, classes, generation.classLoader);
+        return generation;
+    }
+
+    /**
+     * Makes the prepared classes the current ones and closes the former class loader.
+     * Has to be called on the thread reading the loaded classes.
+     */
+    public void activate(Generation generation){
+        if(this.classLoader != null){
+            try {
+                this.classLoader.close();
+            } catch (IOException e) {
+                log.error("Could not close class loader.", e);
+            }
+        }
+        this.classLoader = generation.classLoader;
+        this.typeIndex = generation.typeIndex;
+        loadedClasses.clear();
+        loadedClasses.addAll(generation.classes);
+        log.debug("Loaded " + generation.classes.size + " classes.");
     }
 
     /**
@@ -61,6 +98,13 @@ public class ClassLoadingManager {
         return loadedClasses.toArray(Class.class);
     }
 
+    /**
+     * @return the sub types and annotations of the current loaded classes, replaced on each loading
+     */
+    public TypeIndex getTypeIndex(){
+        return typeIndex;
+    }
+
     /**
      * Returns a class with the provided name if present that is
      * loaded by this class loader
@@ -80,8 +124,11 @@ public class ClassLoadingManager {
     }
 
 
-    public URLClassLoader createURLCLassLoader(URL[] urls){
-        return new URLClassLoader(null, urls, (ClassLoader)ClassLoader.getSystemClassLoader());
+    /**
+     * @param classBytes by binary name: the bytecode of the classes to define
+     */
+    public URLClassLoader createClassLoader(ObjectMap<String, byte[]> classBytes){
+        return new ScriptClassLoader(classPath, classBytes, (ClassLoader)ClassLoader.getSystemClassLoader());
     }
 
     /**
@@ -93,124 +140,31 @@ public class ClassLoadingManager {
         return classLoader;
     }
 
-    // -- private --
-
     /**
-     * collects all .class files from the given directory and its sub-directories
-     * @param classPath
-     * @return
+     * Classes loaded by {@link #prepare(ObjectMap)} and not activated yet
      */
-    private void loadClassesFromDir(Path classPath) throws Exception{
-        /*
-        //ArrayList<File> classFiles = getAllClassFileFrom(binPath);
-        ArrayList<URL> urlList = new ArrayList<>();
-
-        // only binPath URL suffices if every class is loaded via <packageName>.<className>
-        File f = binPath.toFile();
-        try {
-            urlList.add(f.toURI().toURL());
-        } catch (MalformedURLException e) {
-            throw new RuntimeException(e);
-        }
-        URL[] urls = urlList.toArray(new URL[0]); // URL[] urls = new URL[]{binPath.toUri().toURL()};
-        printURLS(urls); //debug
-        cl = new URLClassLoader("classpath", urls, (ClassLoader)ClassLoader.getSystemClassLoader());
-        */
-
-
-        Array<File> classFiles = Pools.obtain(Array.class);
-        classFiles.clear();
-        collectClassFiles(classPath, classFiles);
-
-        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
-        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null ,null);
-        Iterable<? extends JavaFileObject> javaObjects = fileManager.getJavaFileObjectsFromFiles(classFiles);
-
-        // only binPath URL suffices if every class is loaded via <packageName>.<className>
-        URL[] urls = new URL[]{classPath.toUri().toURL()};
-        printURLS(urls); //debug
-
-        // creating a new classloader
-        if(this.classLoader != null)this.classLoader.close();
-        this.classLoader = createURLCLassLoader(urls);
-
-        // loading classes
-        try {
-            loadClasses(classFiles, classLoader, classPath);
-        } catch (Exception e) {
-            throw new GdxRuntimeException("Failed to invoke loading classes method! " + e.toString());
-        }
+    public static class Generation {
+        private final URLClassLoader classLoader;
+        private final Array<Class<?>> classes = new Array<>();
+        private TypeIndex typeIndex = TypeIndex.EMPTY;
 
-        classFiles.clear();
-        Pools.free(classFiles);
-
-
-        // test running a class
-        /*
-        try {
-            // loads compiled .class file
-            // IMPORTANT: the to be loaded class name must also contain its package name (<packagename>.<classname>)
-            // i.e.: MyClass from package com.my.class -> com.my.class.MyClass
-            final Class c = cl.loadClass("testpackage.stuff.JClass3"); //
-            Method m = c.getDeclaredMethod("print");
-            Constructor constructor = c.getConstructor();
-            m.invoke(constructor.newInstance());
-
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        private Generation(URLClassLoader classLoader) {
+            this.classLoader = classLoader;
         }
-        */
-    }
-
-    private void loadClasses(Array<File> classFiles, URLClassLoader cl, Path classPath) {
-        String classesDir = classPath.toString();
-        loadedClasses.clear();
-        for(File file : classFiles){
-            Path filePath = file.toPath();
-            if(!file.getName().endsWith(CLASS_EXTENSION))continue;
-            if(!Files.isRegularFile(filePath))continue;
-            String fullClassName = file.getAbsolutePath().replace(classesDir, "");
-
-            // remove ".class" extension
-            int index = fullClassName.lastIndexOf(".");
-            fullClassName = fullClassName.substring(0,index);
-            fullClassName = fullClassName.replace(File.separator, ".");
-            if(fullClassName.startsWith("."))fullClassName = fullClassName.replaceFirst(".","");
 
+        public URLClassLoader getClassLoader() {
+            return classLoader;
+        }
 
+        /**
+         * discards the generation without activating it
+         */
+        public void close() {
             try {
-                loadedClasses.add(cl.loadClass(fullClassName));
-                log.debug("Loading class: " + fullClassName);
-            } catch (ClassNotFoundException e) {
-                throw new GdxRuntimeException("Could not load class: classesDir: " + classesDir +  ", className: " + fullClassName,e);
+                classLoader.close();
+            } catch (IOException e) {
+                log.error("Could not close class loader.", e);
             }
-
-
-
         }
     }
-
-    /**
-     * collects all .class files from the given directory and its sub-directories
-     * @param dir
-     * @param array the array to add the files to
-     * @return
-     */
-    private Array<File> collectClassFiles(Path dir, Array<File> array){
-        fileWalker.walkFiles(dir, (filePath, attrs) -> {
-            if(filePath.toString().endsWith(CLASS_EXTENSION)) {
-                array.add(filePath.toFile());
-            }
-        });
-        return array;
-    }
-
-    // -- debug --
-
-    private void printURLS(URL[] urls){
-        log.debug("--- printing urls to load classes from: ---");
-        for(URL url : urls)log.debug(url.toString());
-        log.debug("--- ---");
-    }
 }
@@ -2,13 +2,26 @@ package com.sk.editor.scripting;
 
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Logger;
-import com.badlogic.gdx.utils.Pools;
+import com.badlogic.gdx.utils.Null;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.ObjectSet;
+
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
 
 import javax.tools.*;
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class CompilationManager {
 
@@ -17,19 +30,39 @@ public class CompilationManager {
     private final String CLASS_EXTENSION = ".class";
     private FileTreeWalker fileWalker;
     private final Path inputDir, outputDir;
+    private final CompilerService compilerService;
+    private final DependencyGraph graph = new DependencyGraph();
+    /**
+     * by binary name: the bytecode of the current classes
+     */
+    private final ObjectMap<String, byte[]> classBytes = new ObjectMap<>();
+    private boolean persistent = true;
+    private final ExecutorService persistExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ClassWriter");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     // --constructor --
 
     /**
      * @param inputDir the directory to read .java files from (a.k.a sry path).
      *                 Its immediate children must contain packages or .java files
-     * @param outputDir the directory to write the .class files to (a.k.a bin bath)
+     * @param outputDir the directory to write the .class files to (a.k.a bin bath), see {@link #setPersistent(boolean)}
      * @param fileWalker
      */
     public CompilationManager(Path inputDir, Path outputDir, FileTreeWalker fileWalker){
+        this(inputDir, outputDir, fileWalker, new CompilerService());
+    }
+
+    /**
+     * @param compilerService the compiler, may be shared with other compilation managers
+     */
+    public CompilationManager(Path inputDir, Path outputDir, FileTreeWalker fileWalker, CompilerService compilerService){
         this.fileWalker = fileWalker;
         this.inputDir = inputDir;
         this.outputDir = outputDir;
+        this.compilerService = compilerService;
     }
 
 
@@ -55,128 +88,447 @@ public class CompilationManager {
     }
 
     /**
-     * compiles all .java files from the input directory into .class files to the output directory
+     * Compiles the changed .java files from the input directory and the files depending on classes
+     * whose ABI changed, see {@link DependencyGraph}. The first compilation compiles all files.
+     * The classes are kept in memory, see {@link #getClassBytes()}.
+     * @return if the compilation was successfull
+     */
+    public boolean compile() throws Exception{
+        return compile(inputDir, outputDir, null);
+    }
+
+    /**
+     * @see #compile()
+     * @param listener Maybe null. Notified on the compiling thread
+     * @throws CancellationException if the listener cancelled the compilation. The sources not compiled yet
+     * are compiled on the next compilation.
+     */
+    public boolean compile(@Null CompilationListener listener) throws Exception{
+        return compile(inputDir, outputDir, listener);
+    }
+
+    /**
+     * compiles all .java files from the input directory
      * @return if the compilation was successfull
      */
     public boolean compileAll() throws Exception{
-        return compile(inputDir, outputDir);
+        graph.clear();
+        compilerService.reset();
+        return compile(inputDir, outputDir, null);
+    }
+
+    /**
+     * @return the bytecode of the classes of the last successful compilation by binary name
+     * (a copy, the compiler keeps updating its own)
+     */
+    public ObjectMap<String, byte[]> getClassBytes() {
+        return new ObjectMap<>(classBytes);
+    }
+
+    /**
+     * @param persistent if true the compiled classes are written to the output directory in the background
+     */
+    public void setPersistent(boolean persistent) {
+        this.persistent = persistent;
+    }
+
+    public boolean isPersistent() {
+        return persistent;
+    }
+
+    /**
+     * waits for the classes being written to the output directory
+     */
+    public void dispose() {
+        persistExecutor.shutdown();
+        try {
+            if (!persistExecutor.awaitTermination(10, TimeUnit.SECONDS)) log.error("Writing classes did not finish.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
+    // -- private --
+
     /**
-     * Compiles all .java files from the input directory into .class files to the output directory.
+     * Compiles the changed .java files from the input directory into memory.
      * @param srcPath (input directory )the directory from which to read .java files from
      *                   (immediate children consist of packages and .java files)
-     * @param outputDir (class path) the directory to which to write .class files to
+     * @param outputDir (class path) the directory to which to write .class files to if persistent
      * @return if the compilation was successfull
      */
-    private boolean compile(Path srcPath, Path outputDir) throws Exception {
-        // create output folder if absent
-        File file = outputDir.toFile();
-        if(!file.exists())file.mkdirs();
-
-        // set up compiler
-        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector();
-        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
-        // set output directory
-        //fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Arrays.asList(outputDir.toFile())); // adds -d output
-
-        // collect java files
-        Array<File> javaFiles = Pools.obtain(Array.class);
-        javaFiles.clear();
-        collectJavaFiles(srcPath, javaFiles);
-        Iterable<? extends JavaFileObject> javaObjects = fileManager.getJavaFileObjectsFromFiles(javaFiles);
-
-        // create options
-        Array<String> options = new Array<>();//Arrays.asList(new String[]{"-d", outputDir.toString()});//(new String[]{"-d", binPath, "-classpath", System.getProperty("java.class.path")});//
-        options.add("-d"); // -d specifies output directory, compiled in same package strucute
-        options.add(outputDir.toString());
-
-        //collect classes to be processed by annotations
-        Array<String> classesToBeProcessedByAnnotations = null;
-
-        // get & call compilation task
-        JavaCompiler.CompilationTask task = compiler.getTask(
-                null,
-                fileManager,
-                diagnostics,
-                options,
-                classesToBeProcessedByAnnotations,
-                javaObjects);
-
-        boolean success = task.call();
-
-        // debug
+    private boolean compile(Path srcPath, Path outputDir, @Null CompilationListener listener) throws Exception {
+        boolean full = graph.isEmpty();
+
+        // collect java files and the changed ones
+        Array<Path> javaFiles = new Array<>();
+        ObjectSet<Path> present = new ObjectSet<>();
+        ObjectSet<Path> changed = new ObjectSet<>();
+        collectJavaFiles(srcPath, javaFiles, changed);
+        present.addAll(javaFiles);
+        ObjectSet<String> changedClasses = new ObjectSet<>();
+
+        // changes to write to the output directory
+        ObjectMap<String, byte[]> written = new ObjectMap<>();
+        ObjectSet<String> deleted = new ObjectSet<>();
+        if (full) classBytes.clear();
+
+        // deleted java files
+        Array<Path> removed = new Array<>();
+        for (Path source : graph.getSources()) if (!present.contains(source)) removed.add(source);
+        for (Path source : removed) {
+            for (String className : graph.removeSource(source)) {
+                classBytes.remove(className);
+                deleted.add(className);
+                changedClasses.add(className);
+            }
+        }
+
+        ObjectSet<Path> toCompile = new ObjectSet<>();
+        if (full) toCompile.addAll(javaFiles);
+        else toCompile.addAll(changed);
+        graph.getDependents(changedClasses, toCompile);
+        if (toCompile.isEmpty()) {
+            log.debug("All classes are up to date.");
+            persist(written, deleted, false);
+            return true;
+        }
+
+        DiagnosticCollector<JavaFileObject> collector = new DiagnosticCollector();
+        DiagnosticListener<JavaFileObject> diagnostics = diagnostic -> {
+            collector.report(diagnostic);
+            if (listener != null) listener.diagnostic(diagnostic);
+        };
+        TaskListener cancellation = listener == null ? null : new TaskListener() {
+            @Override
+            public void started(TaskEvent e) {
+                if (listener.isCancelled()) throw new CancellationException();
+            }
+        };
+
+        // compile until no dependent is affected anymore
+        ObjectSet<Path> compiled = new ObjectSet<>();
+        boolean success = true;
+        while (success && toCompile.size > 0) {
+            Array<File> files = new Array<>(toCompile.size);
+            for (Path source : toCompile) files.add(source.toFile());
+            log.debug("Compiling " + files.size + " of " + javaFiles.size + " java files...");
+            if (listener != null) {
+                if (listener.isCancelled()) throw cancelled(toCompile, written, deleted);
+                listener.compiling(files.size, javaFiles.size);
+            }
+
+            MemoryFileManager memory = new MemoryFileManager(compilerService.getFileManager(), toCompile);
+            try {
+                success = compilerService.compile(files, memory, diagnostics, cancellation);
+            } catch (RuntimeException e) {
+                if (listener != null && listener.isCancelled()) throw cancelled(toCompile, written, deleted);
+                throw e;
+            }
+            compiled.addAll(toCompile);
+            if (!success) {
+                for (Path source : toCompile) graph.failed(source);
+                break;
+            }
+
+            // record the produced classes, find the dependents of changed ones
+            changedClasses.clear();
+            boolean constants = false;
+            for (Path source : toCompile) {
+                Array<MemoryClassFile> outputs = memory.getOutputs(source);
+                Array<ClassFileInfo> infos = new Array<>(outputs.size);
+                for (MemoryClassFile output : outputs) {
+                    infos.add(ClassFileInfo.read(output.bytes));
+                    classBytes.put(output.binaryName, output.bytes);
+                    written.put(output.binaryName, output.bytes);
+                }
+                for (String className : graph.getClasses(source)) {
+                    if (findInfo(infos, className) != null) continue;
+                    classBytes.remove(className);
+                    deleted.add(className);
+                }
+                constants |= graph.compiled(source, infos, changedClasses);
+            }
+
+            toCompile.clear();
+            if (constants) { // inlined constants do not show up as dependency
+                toCompile.addAll(javaFiles);
+            } else {
+                graph.getDependents(changedClasses, toCompile);
+            }
+            for (Path source : compiled) toCompile.remove(source);
+        }
+
+        // debug, a listener has been notified already
+        if (listener == null) logDiagnostics(collector);
+
+        persist(written, deleted, full && success);
+        return success;
+    }
+
+    private void logDiagnostics(DiagnosticCollector<JavaFileObject> collector) {
         log.debug("--- Compilation diagnostics { ---");
-        for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()){
-            log.error("Line" + d.getLineNumber() + ", " + d.getMessage(null) + " in " + d.getSource().getName());
+        for (Diagnostic<? extends JavaFileObject> d : collector.getDiagnostics()){
+            log.error("Line" + d.getLineNumber() + ", " + d.getMessage(null) + " in " + (d.getSource() == null ? null : d.getSource().getName()));
             //System.out.format("Line %d, %s in %s", d.getLineNumber(), d.getMessage(null), d.getSource().getName());
         }
         log.debug("--- } ---");
+    }
 
-        // clean up
-        cleanUpOutdatedFiles(srcPath, outputDir);
+    /**
+     * Keeps the rounds compiled so far, the sources still to be compiled are compiled next time.
+     */
+    private CancellationException cancelled(ObjectSet<Path> toCompile, ObjectMap<String, byte[]> written, ObjectSet<String> deleted) {
+        for (Path source : toCompile) graph.failed(source);
+        persist(written, deleted, false);
+        log.debug("Compilation cancelled.");
+        return new CancellationException();
+    }
 
-        javaFiles.clear();
-        Pools.free(javaFiles);
-        return success;
+    /**
+     * Writes the changed classes to the output directory in the background. Classes are only written
+     * after a successful round, so the directory always holds complete compilations.
+     * @param cleanUp if true all .class files of classes not compiled anymore are deleted
+     */
+    private void persist(ObjectMap<String, byte[]> written, ObjectSet<String> deleted, boolean cleanUp) {
+        if (!persistent || persistExecutor.isShutdown() || written.isEmpty() && deleted.isEmpty() && !cleanUp) return;
+        ObjectSet<String> current = new ObjectSet<>(classBytes.size);
+        if (cleanUp) for (String className : classBytes.keys()) current.add(className);
+
+        persistExecutor.execute(() -> {
+            for (String className : deleted) deleteClassFile(outputDir, className);
+            for (String className : written.keys()) {
+                Path path = getClassFile(outputDir, className);
+                try {
+                    Files.createDirectories(path.getParent());
+                    Files.write(path, written.get(className));
+                } catch (IOException e) {
+                    log.error("Could not write class file: " + path);
+                }
+            }
+            if (cleanUp) cleanUpOutdatedFiles(outputDir, current);
+        });
     }
 
     /**
      * Collects all .java files from the given directory and its sub-directories
      * @param inputDir the dir from which to read .java files from
      * @param array the array to add the files into
+     * @param changed to add the files to that changed since their last compilation
      */
-    private Array<File> collectJavaFiles(Path inputDir, Array<File> array){
-        if (Files.isDirectory(inputDir)){
+    private void collectJavaFiles(Path inputDir, Array<Path> array, ObjectSet<Path> changed) throws IOException {
+        if (!Files.isDirectory(inputDir)) return;
+        try {
             fileWalker.walkFiles(inputDir, (filePath, attrs) -> {
                 if(filePath.toString().endsWith(JAVA_EXTENSION)) {
-                    array.add(filePath.toFile());
+                    Path source = filePath.toAbsolutePath().normalize();
+                    array.add(source);
+                    try {
+                        if (graph.isChanged(source, attrs)) changed.add(source);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
                 }
             });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        return array;
     }
 
-    private void cleanUpOutdatedFiles(Path srcPath, Path outputDir) throws IOException {
-        log.debug("Cleaning up outdated files...");
-        // clean .class files
-        Files.walk(outputDir)
-                .filter(path -> {
-                    return path.toString().endsWith(CLASS_EXTENSION);
-                })
-                .filter(path -> {
-                    Path relativePath = outputDir.relativize(path);
-                    String className = relativePath.toString().replace(CLASS_EXTENSION, "");
-                    Path srcFile = srcPath.resolve(className.replace(".", "/") + JAVA_EXTENSION);
-                    return Files.exists(srcFile) == false; // only delete if file does not exist in src anymore
-                }).forEach(path -> {
-                    try {
-                        Files.delete(path);
-                        log.debug("Deleting outdated file: " + path);
-                    } catch (IOException e) {
-                        log.error("Could not delete outdated file: " + path);
-                    }
-                });
-        // clean directories
-        Files.walk(outputDir)
-                 .filter(path -> {
-                         return Files.isDirectory(path);
-                 })
-                 .filter(path -> {
-                     Path relativePath = outputDir.relativize(path);
-                     Path srcFile = srcPath.resolve(relativePath);
-                     return Files.exists(srcFile) == false; // only delete if file does not exist in src anymore
-                 }).forEach(path -> {
-                    try {
-                        Files.delete(path);
-                        log.debug("Deleting outdated dir: " + path);
+    private static ClassFileInfo findInfo(Array<ClassFileInfo> infos, String className) {
+        for (ClassFileInfo info : infos) if (info.name.equals(className)) return info;
+        return null;
+    }
 
-                    } catch (IOException e) {
-                        log.error("Could not delete dir: " + path);
-                    }
-                });
+    private Path getClassFile(Path outputDir, String className) {
+        return outputDir.resolve(className.replace('.', File.separatorChar) + CLASS_EXTENSION);
+    }
+
+    /**
+     * deletes the .class file and its directories if they became empty
+     */
+    private void deleteClassFile(Path outputDir, String className) {
+        Path path = getClassFile(outputDir, className);
+        try {
+            if (!Files.deleteIfExists(path)) return;
+            log.debug("Deleting outdated file: " + path);
+            for (Path dir = path.getParent(); dir != null && !dir.equals(outputDir); dir = dir.getParent()) {
+                try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+                    if (children.iterator().hasNext()) break;
+                }
+                Files.delete(dir);
+            }
+        } catch (IOException e) {
+            log.error("Could not delete outdated file: " + path);
+        }
+    }
 
+    /**
+     * deletes the .class files not compiled from the current .java files and the empty directories in one walk
+     * @param produced the binary names of the compiled classes
+     */
+    private void cleanUpOutdatedFiles(Path outputDir, ObjectSet<String> produced) {
+        if (!Files.isDirectory(outputDir)) return;
+        log.debug("Cleaning up outdated files...");
+        fileWalker.walkFiles(outputDir, (path, attrs) -> {
+            String name = outputDir.relativize(path).toString();
+            if (!name.endsWith(CLASS_EXTENSION)) return;
+            String className = name.substring(0, name.length() - CLASS_EXTENSION.length()).replace(File.separatorChar, '.');
+            if (produced.contains(className)) return;
+            try {
+                Files.delete(path);
+                log.debug("Deleting outdated file: " + path);
+            } catch (IOException e) {
+                log.error("Could not delete outdated file: " + path);
+            }
+        }, dir -> {
+            if (dir.equals(outputDir)) return;
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+                if (children.iterator().hasNext()) return;
+            } catch (IOException e) {
+                return;
+            }
+            try {
+                Files.delete(dir);
+                log.debug("Deleting outdated dir: " + dir);
+            } catch (IOException e) {
+                log.error("Could not delete dir: " + dir);
+            }
+        });
         log.debug("..done cleaning up.");
     }
+
+    /**
+     * Notified about a compilation in progress
+     */
+    public interface CompilationListener {
+        /**
+         * a round of the compilation starts
+         * @param files the number of .java files compiled in this round
+         * @param total the number of .java files
+         */
+        void compiling(int files, int total);
+
+        /**
+         * reported by the compiler, as soon as it is found
+         */
+        void diagnostic(Diagnostic<? extends JavaFileObject> diagnostic);
+
+        /**
+         * @return true to abort the compilation, polled by the compiler
+         */
+        boolean isCancelled();
+    }
+
+    /**
+     * Keeps the compiled classes in memory and provides the classes of former compilations
+     * to the compiler, so nothing is read from or written to the output directory.
+     */
+    private class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+        /**
+         * by source: the classes written by the compiler
+         */
+        private final ObjectMap<Path, Array<MemoryClassFile>> outputs = new ObjectMap<>();
+        /**
+         * by package: the classes of former compilations, except the ones being recompiled
+         */
+        private final ObjectMap<String, Array<MemoryClassFile>> packages = new ObjectMap<>();
+
+        MemoryFileManager(StandardJavaFileManager fileManager, ObjectSet<Path> compiling) {
+            super(fileManager);
+            ObjectSet<String> recompiled = new ObjectSet<>();
+            for (Path source : compiling) for (String className : graph.getClasses(source)) recompiled.add(className);
+
+            for (String className : classBytes.keys()) {
+                if (recompiled.contains(className)) continue;
+                int index = className.lastIndexOf('.');
+                String packageName = index == -1 ? "" : className.substring(0, index);
+                Array<MemoryClassFile> files = packages.get(packageName);
+                if (files == null) packages.put(packageName, files = new Array<>());
+                files.add(new MemoryClassFile(className, classBytes.get(className)));
+            }
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+                                                   FileObject sibling) throws IOException {
+            if (location != StandardLocation.CLASS_OUTPUT || kind != JavaFileObject.Kind.CLASS)
+                return super.getJavaFileForOutput(location, className, kind, sibling);
+
+            MemoryClassFile output = new MemoryClassFile(className, null);
+            if (sibling != null) {
+                Path source = Paths.get(sibling.toUri()).toAbsolutePath().normalize();
+                Array<MemoryClassFile> files = outputs.get(source);
+                if (files == null) outputs.put(source, files = new Array<>(1));
+                files.add(output);
+            }
+            return output;
+        }
+
+        @Override
+        public Iterable<JavaFileObject> list(Location location, String packageName, Set<JavaFileObject.Kind> kinds,
+                                             boolean recurse) throws IOException {
+            Iterable<JavaFileObject> listed = super.list(location, packageName, kinds, recurse);
+            if (location != StandardLocation.CLASS_PATH || !kinds.contains(JavaFileObject.Kind.CLASS)) return listed;
+
+            ArrayList<JavaFileObject> files = new ArrayList<>();
+            listed.forEach(files::add);
+            for (String name : packages.keys()) {
+                if (name.equals(packageName) || recurse && name.startsWith(packageName + ".")) {
+                    for (MemoryClassFile file : packages.get(name)) files.add(file);
+                }
+            }
+            return files;
+        }
+
+        @Override
+        public void close() {
+            // the file manager of the compiler service stays open
+        }
+
+        @Override
+        public String inferBinaryName(Location location, JavaFileObject file) {
+            if (file instanceof MemoryClassFile) return ((MemoryClassFile) file).binaryName;
+            return super.inferBinaryName(location, file);
+        }
+
+        /**
+         * @return the classes written for the source
+         */
+        Array<MemoryClassFile> getOutputs(Path source) {
+            Array<MemoryClassFile> files = outputs.get(source);
+            return files == null ? new Array<>(0) : files;
+        }
+    }
+
+    /**
+     * A .class file held in memory
+     */
+    private static class MemoryClassFile extends SimpleJavaFileObject {
+        final String binaryName;
+        byte[] bytes;
+
+        MemoryClassFile(String binaryName, byte[] bytes) {
+            super(URI.create("memory:///" + binaryName.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+            this.binaryName = binaryName;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public InputStream openInputStream() {
+            return new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return new ByteArrayOutputStream() {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    bytes = toByteArray();
+                }
+            };
+        }
+    }
 }
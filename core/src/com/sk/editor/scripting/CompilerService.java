@@ -0,0 +1,102 @@
+package com.sk.editor.scripting;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Logger;
+import com.badlogic.gdx.utils.Null;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskListener;
+
+import javax.tools.*;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A long-lived java compiler shared by all compilations. The compiler and its file manager are created on the first
+ * compilation and kept, so the platform classes and the editor class path are only opened and indexed once.
+ * Only the compiled sources and the script classes in memory change between compilations and are passed with each call.
+ * Compilations are serialized, the file manager is not thread safe.
+ * Without a system java compiler, i.e. when running on a JRE, compilations fail with an {@link IllegalStateException}.
+ */
+public class CompilerService {
+
+    private static final Logger log = new Logger(CompilerService.class.toString(), Logger.DEBUG);
+
+    private @Null JavaCompiler compiler;
+    private @Null StandardJavaFileManager fileManager;
+    private final Array<String> options = new Array<>();
+
+    public CompilerService() {
+        // the script classes are provided by the file manager of each compilation
+        options.add("-classpath");
+        options.add(System.getProperty("java.class.path"));
+    }
+
+    /**
+     * @param files the .java files to compile
+     * @param fileManager the {@link #getFileManager()} or a {@link ForwardingJavaFileManager} of it,
+     *                    i.e. to keep the output in memory. Closing it must not close the shared one.
+     * @param taskListener Maybe null. Notified about the progress of the compiler,
+     *                     an exception thrown by it aborts the compilation
+     * @return if the compilation was successful
+     */
+    public synchronized boolean compile(Array<File> files, JavaFileManager fileManager,
+                                        DiagnosticListener<? super JavaFileObject> diagnostics,
+                                        @Null TaskListener taskListener) {
+        return call(getFileManager().getJavaFileObjectsFromFiles(files), fileManager, diagnostics, taskListener);
+    }
+
+    /**
+     * @return the shared file manager, to be wrapped for a compilation. Changes on {@link #reset()}.
+     * @throws IllegalStateException if there is no system java compiler
+     */
+    public synchronized StandardJavaFileManager getFileManager() {
+        if (fileManager == null) fileManager = getCompiler().getStandardFileManager(null, null, null);
+        return fileManager;
+    }
+
+    /**
+     * Drops the file manager, it is recreated on the next compilation, i.e. after the editor class path changed.
+     */
+    public synchronized void reset() {
+        close();
+        fileManager = null;
+    }
+
+    public synchronized void dispose() {
+        reset();
+    }
+
+    // -- private --
+
+    private boolean call(Iterable<? extends JavaFileObject> sources, JavaFileManager fileManager,
+                         DiagnosticListener<? super JavaFileObject> diagnostics, @Null TaskListener taskListener) {
+        //collect classes to be processed by annotations
+        Array<String> classesToBeProcessedByAnnotations = null;
+
+        // get & call compilation task
+        JavaCompiler.CompilationTask task = getCompiler().getTask(
+                null,
+                fileManager,
+                diagnostics,
+                options,
+                classesToBeProcessedByAnnotations,
+                sources);
+        if (taskListener != null) ((JavacTask) task).addTaskListener(taskListener);
+        return task.call();
+    }
+
+    private JavaCompiler getCompiler() {
+        if (compiler == null) compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) throw new IllegalStateException("No java compiler found, a JDK is required.");
+        return compiler;
+    }
+
+    private void close() {
+        if (fileManager == null) return;
+        try {
+            fileManager.close();
+        } catch (IOException e) {
+            log.error("Could not close the file manager.", e);
+        }
+    }
+}
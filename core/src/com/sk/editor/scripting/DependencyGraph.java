@@ -0,0 +1,200 @@
+package com.sk.editor.scripting;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.ObjectSet;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Remembers what the last compilations produced: the content hash and classes of each source,
+ * and the {@link ClassFileInfo} of each class. Used by the {@link CompilationManager} to only recompile
+ * changed sources and the sources depending on classes whose ABI changed.
+ */
+public class DependencyGraph {
+
+    private final ObjectMap<Path, SourceUnit> sources = new ObjectMap<>();
+    private final ObjectMap<String, ClassUnit> classes = new ObjectMap<>();
+
+    public boolean isEmpty() {
+        return sources.isEmpty();
+    }
+
+    public void clear() {
+        sources.clear();
+        classes.clear();
+    }
+
+    /**
+     * Only reads the source if its size or modification time changed.
+     *
+     * @return true if the source is new or its content differs from the last successful compilation
+     */
+    public boolean isChanged(Path source, BasicFileAttributes attrs) throws IOException {
+        SourceUnit unit = sources.get(source);
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        if (unit != null && unit.hash != null && unit.lastModified == lastModified && unit.size == attrs.size())
+            return false;
+
+        if (unit == null) sources.put(source, unit = new SourceUnit());
+        unit.lastModified = lastModified;
+        unit.size = attrs.size();
+        byte[] hash = hash(Files.readAllBytes(source));
+        if (unit.hash != null && Arrays.equals(unit.hash, hash)) return false; // only touched
+        unit.pendingHash = hash;
+        return true;
+    }
+
+    /**
+     * @return the binary names of the classes the source produced. Do not modify.
+     */
+    public Array<String> getClasses(Path source) {
+        SourceUnit unit = sources.get(source);
+        return unit == null ? new Array<>(0) : unit.classes;
+    }
+
+    /**
+     * @return the sources known to the graph
+     */
+    public ObjectMap.Keys<Path> getSources() {
+        return sources.keys();
+    }
+
+    /**
+     * Forgets the deleted source.
+     *
+     * @return the binary names of the classes it produced
+     */
+    public Array<String> removeSource(Path source) {
+        SourceUnit unit = sources.remove(source);
+        if (unit == null) return new Array<>(0);
+        for (String className : unit.classes) classes.remove(className);
+        return unit.classes;
+    }
+
+    /**
+     * Records the classes of a successfully compiled source.
+     *
+     * @param produced the classes compiled from the source
+     * @param changed  to add the binary names of the classes whose ABI changed, which were added or removed
+     * @return true if one of the changed classes declares compile time constants, see {@link ClassFileInfo#hasConstants}
+     */
+    public boolean compiled(Path source, Array<ClassFileInfo> produced, ObjectSet<String> changed) {
+        SourceUnit unit = sources.get(source);
+        if (unit == null) sources.put(source, unit = new SourceUnit());
+        if (unit.pendingHash != null) unit.hash = unit.pendingHash;
+        unit.pendingHash = null;
+
+        boolean constants = false;
+        ObjectSet<String> previous = new ObjectSet<>(unit.classes.size);
+        for (String className : unit.classes) previous.add(className);
+        unit.classes.clear();
+
+        for (ClassFileInfo info : produced) {
+            unit.classes.add(info.name);
+            ClassUnit old = classes.put(info.name, new ClassUnit(source, info));
+            previous.remove(info.name);
+            if (old == null || !Arrays.equals(old.info.abiHash, info.abiHash)) {
+                changed.add(info.name);
+                constants |= info.hasConstants || old != null && old.info.hasConstants;
+            }
+        }
+
+        // classes the source does not declare anymore
+        for (String className : previous) {
+            ClassUnit old = classes.remove(className);
+            changed.add(className);
+            constants |= old != null && old.info.hasConstants;
+        }
+        return constants;
+    }
+
+    /**
+     * The source failed to compile and is recompiled on the next compilation, even if it does not change.
+     */
+    public void failed(Path source) {
+        SourceUnit unit = sources.get(source);
+        if (unit == null) return;
+        unit.hash = null;
+        unit.pendingHash = null;
+    }
+
+    /**
+     * Inherited members are referenced through the type they are accessed on (i.e. b.foo() of B extends A
+     * references B), so the classes referencing a subtype of a changed class are dependents as well.
+     *
+     * @param classNames binary names
+     * @param out        to add the sources of the classes referencing one of the classes or their subtypes to
+     */
+    public ObjectSet<Path> getDependents(ObjectSet<String> classNames, ObjectSet<Path> out) {
+        if (classNames.isEmpty()) return out;
+        ObjectSet<String> types = addSubTypes(new ObjectSet<>(classNames));
+        for (ClassUnit unit : classes.values()) {
+            if (out.contains(unit.source)) continue;
+            for (String className : types) {
+                if (unit.info.dependencies.contains(className)) {
+                    out.add(unit.source);
+                    break;
+                }
+            }
+        }
+        return out;
+    }
+
+    // -- private --
+
+    /**
+     * adds the known classes extending or implementing one of the types, transitively
+     */
+    private ObjectSet<String> addSubTypes(ObjectSet<String> types) {
+        boolean added = true;
+        while (added) {
+            added = false;
+            for (ClassUnit unit : classes.values()) {
+                ClassFileInfo info = unit.info;
+                if (types.contains(info.name)) continue;
+                boolean subType = info.superName != null && types.contains(info.superName);
+                for (int i = 0; !subType && i < info.interfaces.size; i++) subType = types.contains(info.interfaces.get(i));
+                if (subType) added |= types.add(info.name);
+            }
+        }
+        return types;
+    }
+
+    private static byte[] hash(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class SourceUnit {
+        long lastModified, size;
+        /**
+         * the content hash of the last successful compilation, null if it failed
+         */
+        byte[] hash;
+        /**
+         * the content hash while the changed source is being compiled
+         */
+        byte[] pendingHash;
+        final Array<String> classes = new Array<>();
+    }
+
+    private static class ClassUnit {
+        final Path source;
+        final ClassFileInfo info;
+
+        ClassUnit(Path source, ClassFileInfo info) {
+            this.source = source;
+            this.info = info;
+        }
+    }
+}
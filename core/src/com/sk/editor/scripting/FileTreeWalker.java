@@ -7,6 +7,7 @@ import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 public class FileTreeWalker {
 
@@ -34,6 +35,13 @@ public class FileTreeWalker {
 
 
     public void walkFiles(Path startDir, BiConsumer<Path, BasicFileAttributes> onVisitFile){
+        walkFiles(startDir, onVisitFile, null);
+    }
+
+    /**
+     * @param onPostVisitDir called after the files of the directory have been visited, i.e. to delete it if empty
+     */
+    public void walkFiles(Path startDir, BiConsumer<Path, BasicFileAttributes> onVisitFile, Consumer<Path> onPostVisitDir){
         SimpleFileVisitor<Path> visitor = new SimpleFileVisitor<Path>(){
             @Override
             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
@@ -41,6 +49,13 @@ public class FileTreeWalker {
                 if(onVisitFile != null) onVisitFile.accept(file, attrs);
                 return result;
             }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                FileVisitResult result = super.postVisitDirectory(dir, exc);
+                if(onPostVisitDir != null) onPostVisitDir.accept(dir);
+                return result;
+            }
         };
 
         try {
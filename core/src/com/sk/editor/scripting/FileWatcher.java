@@ -1,6 +1,7 @@
 package com.sk.editor.scripting;
 
 import com.badlogic.gdx.utils.*;
+import com.sk.editor.EditorManager;
 
 import java.io.IOException;
 import java.nio.file.*;
@@ -183,6 +184,8 @@ public class FileWatcher {
     private final void notifyForChanges() {
         log.info("processing gathered file events...");
         processEvents(events);
+        // the changes might have to be displayed
+        EditorManager.requestRendering();
         // free events
         events.forEach(e -> Pools.free(e) );
         events.clear();
@@ -1,6 +1,7 @@
 package com.sk.editor.scripting;
 
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
 
 import java.io.File;
 import java.net.MalformedURLException;
@@ -9,12 +10,21 @@ import java.net.URLClassLoader;
 import java.nio.file.Path;
 
 /**
- * Custom class loader for adding logic to register allowed packages using {@link #registerAllowedPackages(String...)}
+ * Custom class loader for adding logic to register allowed packages using {@link #registerAllowedPackages(String...)}.
+ * Defines classes from compiled bytecode in memory (see {@link CompilationManager#getClassBytes()}) or loads them
+ * from its urls.
  */
 public class ScriptClassLoader extends URLClassLoader {
 
     private final Path classPath;
-    private static final Array<String> ALLOWED_PACKAGES = new Array<>();
+    /**
+     * replaced by a copy on registration instead of modified, as classes are loaded on the compiling and the gl thread
+     */
+    private volatile String[] allowedPackages = new String[0];
+    /**
+     * by binary name: the bytecode of the classes to define
+     */
+    private final ObjectMap<String, byte[]> classBytes;
 
     public ScriptClassLoader(Path classPath){
         this(classPath, new URL[0]);
@@ -25,8 +35,20 @@ public class ScriptClassLoader extends URLClassLoader {
     }
 
     public ScriptClassLoader(Path classPath, URL[] urls, ClassLoader parent){
+        this(classPath, urls, new ObjectMap<>(), parent);
+    }
+
+    /**
+     * @param classBytes by binary name: the bytecode of the classes to define. Not copied.
+     */
+    public ScriptClassLoader(Path classPath, ObjectMap<String, byte[]> classBytes, ClassLoader parent){
+        this(classPath, new URL[0], classBytes, parent);
+    }
+
+    public ScriptClassLoader(Path classPath, URL[] urls, ObjectMap<String, byte[]> classBytes, ClassLoader parent){
         super(urls, parent);
         this.classPath = classPath;
+        this.classBytes = classBytes;
     }
 
     /**
@@ -46,31 +68,34 @@ public class ScriptClassLoader extends URLClassLoader {
         // check if class is allowed to be loaded
         if(hasAllowedPackage(name) == false)
             throw new ClassNotFoundException("Class " + name + " not allowed to be loaded!");
+        byte[] bytes = classBytes.get(name);
+        if(bytes != null)return defineClass(name, bytes, 0, bytes.length);
         return super.findClass(name);
     }
 
     private boolean hasAllowedPackage(String className){
-        for(String packageName : ALLOWED_PACKAGES){
-            if(className.startsWith(packageName)){
+        String[] packages = allowedPackages;
+        for(int i = 0; i < packages.length; i++){
+            if(className.startsWith(packages[i])){
                 return true;
             }
         }
         return false;
     }
 
-    // -- static --
-
     /**
-     * All packages starting with the registered package names will be allowed to be laoded
+     * All packages starting with the registered package names will be allowed to be laoded by this loader.
      * Ignores names that are null or already registered.
      * @param packageName
      */
-    public void registerAllowedPackages(String ...packageName){
+    public synchronized void registerAllowedPackages(String ...packageName){
         if(packageName == null)return;
+        Array<String> packages = new Array<>(allowedPackages);
         for(String name : packageName){
-            if(name == null || ALLOWED_PACKAGES.contains(name,false))continue;
-            else ALLOWED_PACKAGES.add(name);
+            if(name == null || packages.contains(name,false))continue;
+            else packages.add(name);
         }
+        allowedPackages = packages.toArray(String.class);
     }
 
 }
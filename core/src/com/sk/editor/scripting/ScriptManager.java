@@ -4,17 +4,21 @@ import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.utils.*;
 import com.badlogic.gdx.utils.reflect.ReflectionException;
+import com.sk.editor.EditorManager;
 import com.sk.editor.config.Config;
+import com.sk.editor.ecs.utils.CustomJsonArtemisSerializer;
 import com.sk.editor.ui.logger.EditorLogger;
-import org.reflections.Reflections;
 
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
 import java.io.File;
-import java.net.URL;
+import java.lang.annotation.Annotation;
 import java.net.URLClassLoader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ScriptManager {
 
@@ -29,7 +33,21 @@ public class ScriptManager {
     private FileTreeWalker fileTreeWalker;
     private ClassLoadingManager classLoadingManager;
     private CompilationManager compilationManager;
+    private final CompilerService compilerService = new CompilerService();
+    private final ScheduledExecutorService compileExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ScriptCompiler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * incremented on each request, compilations of older requests are outdated
+     */
+    private final AtomicInteger compileRequests = new AtomicInteger();
+    private final Object compileLock = new Object();
+    private ScheduledFuture<?> scheduledCompile;
+    private volatile boolean compiling;
     private FileWatcher fileWatcher;
+    private final Array<ReloadListener> reloadListeners = new Array<>();
 
     private boolean init;
 
@@ -37,9 +55,10 @@ public class ScriptManager {
      * @param projectPath the absolute path of the project directory containing core, assets and desktop dir
      */
     public ScriptManager(FileHandle projectPath){
-        // #init called in compile and load
+        // #init called in compile and load, the compiler service is kept across project path changes
         try {
-            setProjectPath(projectPath, true); // tries to compile and load
+            setProjectPath(projectPath, false);
+            compileAndLoad(); // the initial classes are needed before the scene is loaded
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -59,52 +78,75 @@ public class ScriptManager {
         fileTreeWalker = new FileTreeWalker();
 
         // compilation manager
-        compilationManager = new CompilationManager(srcPath, classPath, fileTreeWalker);
+        compileRequests.incrementAndGet(); // background compilations of the former project are outdated
+        if(compilationManager != null)compilationManager.dispose();
+        compilationManager = new CompilationManager(srcPath, classPath, fileTreeWalker, compilerService);
+        compilationManager.setPersistent(Config.PERSIST_COMPILED_CLASSES);
 
-        // file watcher
+        // file watcher, notified on its own thread
         if(fileWatcher != null)fileWatcher.stop();
         fileWatcher = new FileWatcherAdapter(srcPath) {
             @Override
             public void processEvents(Array<FileEvent> events) {
                 super.processEvents(events);
-                log.info("Changes were made in source path. Recompilation and loading advised");
-                log.debug("Recompile & load", "button", (Runnable) () -> {
-                    try {
-                        compileAndLoad();
-                    } catch (Exception e) {
-                        log.error("Could not Recompile and load.",e);
-                    }
+                if(Config.AUTO_RECOMPILE_SCRIPTS){
+                    Gdx.app.postRunnable(() -> requestCompileAndLoad(Config.SCRIPT_RECOMPILE_DELAY));
+                    return;
+                }
+                Gdx.app.postRunnable(() -> {
+                    log.info("Changes were made in source path. Recompilation and loading advised");
+                    log.debug("Recompile & load", "button", (Runnable) () -> requestCompileAndLoad(0));
                 });
             }
         };
         fileWatcher.start();
 
         // class loading manager
-        classLoadingManager = new ClassLoadingManager(classPath, fileTreeWalker) {
+        classLoadingManager = new ClassLoadingManager(classPath) {
+            /**
+             * called on the compiling thread, the loader becomes current on activation
+             */
             @Override
-            public URLClassLoader createURLCLassLoader(URL[] urls) {
-                log.debug("Creating ScriptClassLoader.");
-                ScriptClassLoader loader = new ScriptClassLoader(classPath, urls, (ClassLoader) ClassLoader.getSystemClassLoader());
+            public URLClassLoader createClassLoader(ObjectMap<String, byte[]> classBytes) {
+                ScriptClassLoader loader = new ScriptClassLoader(classPath, classBytes, (ClassLoader) ClassLoader.getSystemClassLoader());
                 loader.registerAllowedPackages(packageName);
-
-                // set the class loader as current context classloader of the thread
-                Thread.currentThread().setContextClassLoader(loader);
-
                 return loader;
             }
+
+            @Override
+            public void activate(Generation generation) {
+                super.activate(generation);
+                setContextClassLoader(generation.getClassLoader());
+                for(int i = 0; i < reloadListeners.size; i++)reloadListeners.get(i).reloaded(generation.getClassLoader());
+            }
         };
     }
 
-    // -- compile & load --
-
     /**
-     * @return true if the compilation and loading was successful
+     * sets the class loader as current context classloader of the thread
      */
-    public boolean compileAndLoad() throws Exception {
+    private void setContextClassLoader(ClassLoader loader){
+        Thread.currentThread().setContextClassLoader(loader);
+        CustomJsonArtemisSerializer.invalidateClassCache();
+    }
+
+    private void ensureInit() throws Exception {
         if(!init){
             init();
             init = true;
         }
+    }
+
+    // -- compile & load --
+
+    /**
+     * Compiles and loads on the calling thread, which has to be the GL thread.
+     * Cancels a compilation running in the background.
+     * @return true if the compilation and loading was successful
+     */
+    public boolean compileAndLoad() throws Exception {
+        ensureInit();
+        compileRequests.incrementAndGet(); // background compilations are outdated
 
 
         log.debug("projectPath: " + getProjectPath());
@@ -112,36 +154,148 @@ public class ScriptManager {
         log.debug("classPath: " + getClassPath());
         log.debug("packageName: " + getPackageName());
 
+        synchronized (compileLock) {
+            // compiling
+            log.debug("Trying to compile classes from src path...");
+            boolean success = false;
+            try {
+                success = compilationManager.compile();
+            } catch (Exception e) {
+                log.error("...Compilation Failed!" , e);
+                return false;
+            }
 
-        // compiling
-        log.debug("Trying to compile classes from src path...");
-        boolean success = false;
-        try {
-            success = compilationManager.compileAll();
-        } catch (Exception e) {
-            log.error("...Compilation Failed!" , e);
-            return false;
+            if (!success) {
+                log.error("...Compilation Failed!");
+                return false;
+            }
+            log.debug("...Compilation Successful!");
+
+            //loading
+            log.debug("Trying to load compiled classes...");
+            try {
+                classLoadingManager.loadAllClasses(compilationManager.getClassBytes());
+            } catch (Exception e) {
+                log.error("...Loading Failed." + " " + e.toString());
+                return false;
+            }
+            log.debug("...Loading Successful!");
         }
 
-        if (!success) {
-            log.error("...Compilation Failed!");
-            return false;
-        }
-        log.debug("...Compilation Successful!");
 
-        //loading
-        log.debug("Trying to load compiled classes...");
+        return true;
+    }
+
+    /**
+     * Compiles and loads in the background after the delay without blocking. Requests within the delay are merged
+     * and a background compilation of an older request is cancelled, so bursts of changes compile once.
+     * Progress and diagnostics are logged as they come in. The new classes become current between two frames.
+     * Has to be called on the GL thread.
+     * @param delay in seconds
+     */
+    public void requestCompileAndLoad(float delay) {
         try {
-            classLoadingManager.loadAllClasses();
+            ensureInit();
         } catch (Exception e) {
-            log.error("...Loading Failed." + " " + e.toString());
-            return false;
+            log.error("Could not initialize " + getClass().getSimpleName() + ".", e);
+            return;
         }
-        log.debug("...Loading Successful!");
 
+        int request = compileRequests.incrementAndGet();
+        CompilationManager compilation = compilationManager;
+        ClassLoadingManager loading = classLoadingManager;
+        if (scheduledCompile != null) scheduledCompile.cancel(false);
+        scheduledCompile = compileExecutor.schedule(() -> compileAndLoad(request, compilation, loading),
+                (long) (delay * 1000), TimeUnit.MILLISECONDS);
+    }
 
+    /**
+     * @param listener notified on the GL thread whenever new classes became current, i.e. to swap the components of
+     *                 the world to the new classes
+     */
+    public void addReloadListener(ReloadListener listener){
+        if(!reloadListeners.contains(listener, true))reloadListeners.add(listener);
+    }
 
-        return true;
+    public void removeReloadListener(ReloadListener listener){
+        reloadListeners.removeValue(listener, true);
+    }
+
+    /**
+     * @return true while compiling in the background
+     */
+    public boolean isCompiling() {
+        return compiling;
+    }
+
+    /**
+     * runs on the compile executor
+     */
+    private void compileAndLoad(int request, CompilationManager compilation, ClassLoadingManager loading) {
+        if (request != compileRequests.get()) return; // outdated
+        synchronized (compileLock) {
+            compiling = true;
+            try {
+                // compiling
+                Gdx.app.postRunnable(() -> log.info("Compiling scripts..."));
+                boolean success;
+                try {
+                    success = compilation.compile(new CompilationManager.CompilationListener() {
+                        @Override
+                        public void compiling(int files, int total) {
+                            Gdx.app.postRunnable(() -> log.debug("Compiling " + files + " of " + total + " java files..."));
+                        }
+
+                        @Override
+                        public void diagnostic(Diagnostic<? extends JavaFileObject> d) {
+                            String message = "Line " + d.getLineNumber() + ", " + d.getMessage(null)
+                                    + " in " + (d.getSource() == null ? null : d.getSource().getName());
+                            boolean error = d.getKind() == Diagnostic.Kind.ERROR;
+                            Gdx.app.postRunnable(() -> {
+                                if (error) log.error(message);
+                                else log.info(message);
+                            });
+                        }
+
+                        @Override
+                        public boolean isCancelled() {
+                            return request != compileRequests.get();
+                        }
+                    });
+                } catch (CancellationException e) {
+                    Gdx.app.postRunnable(() -> log.debug("Compilation cancelled by newer changes."));
+                    return;
+                } catch (Exception e) {
+                    Gdx.app.postRunnable(() -> log.error("...Compilation Failed!", e));
+                    return;
+                }
+                if (!success) {
+                    Gdx.app.postRunnable(() -> log.error("...Compilation Failed!"));
+                    return;
+                }
+                if (request != compileRequests.get()) return;
+
+                //loading, the classes are defined here and swapped in on the GL thread
+                ClassLoadingManager.Generation generation;
+                try {
+                    generation = loading.prepare(compilation.getClassBytes());
+                } catch (Exception e) {
+                    Gdx.app.postRunnable(() -> log.error("...Loading Failed." + " " + e.toString()));
+                    return;
+                }
+                Gdx.app.postRunnable(() -> {
+                    if (request != compileRequests.get() || loading != classLoadingManager) {
+                        generation.close();
+                        return;
+                    }
+                    loading.activate(generation);
+                    log.info("...Scripts compiled and loaded.");
+                    EditorManager.requestRendering();
+                });
+            } finally {
+                compiling = false;
+            }
+        }
     }
 
     /**
@@ -174,7 +328,7 @@ public class ScriptManager {
     }
 
     /**
-     *
+     * Looks the sub types up in the {@link TypeIndex} built when the classes were loaded.
      * @param superClass
      * @param array the array to fill the found class into
      * @return the array
@@ -188,17 +342,31 @@ public class ScriptManager {
         ClassLoader loader = classLoadingManager.getCurrentClassLoader();
         if(loader == null)throw new GdxRuntimeException("Loader can not be null.");
 
-        Reflections reflections = new Reflections(getPackageName(), loader);
-        Set<Class <? extends T>> set = reflections.getSubTypesOf(superClass);
-        Class<? extends T>[] classes = new Class[0];
-        array.addAll(set.toArray(classes));
-        return array;
+        return classLoadingManager.getTypeIndex().getSubTypesOf(superClass, array);
+    }
+
+    /**
+     * @param annotation i.e. {@link com.sk.editor.ui.inspector.SerializeField}
+     * @param array the array to fill the classes using the annotation on the class, a field or a method into
+     * @return the array
+     * @throws ReflectionException
+     */
+    public Array<Class<?>> getTypesAnnotatedWith(Class<? extends Annotation> annotation, Array<Class<?>> array)throws ReflectionException {
+        if(array == null)throw new ReflectionException("array can not be null.");
+        if(annotation == null)throw new ReflectionException("annotation can not be null.");
+
+        return classLoadingManager.getTypeIndex().getTypesAnnotatedWith(annotation, array);
     }
 
 
     public FileHandle getProjectPath() {
         return projectPath;
     }
+    /**
+     * Has to be called on the GL thread.
+     * @param compileAndLoad true to compile and load the new project in the background, see
+     *                       {@link #requestCompileAndLoad(float)}
+     */
     public void setProjectPath(FileHandle projectPath, boolean compileAndLoad) throws Exception{
         if(projectPath == null)throw new NullPointerException("Project path can't be null");
 
@@ -216,12 +384,7 @@ public class ScriptManager {
         this.init = false; // notify for re-init
 
         if(compileAndLoad == false)return;
-        // try to compile and load
-        try {
-            compileAndLoad();
-        } catch (Exception e) {
-            log.error("Could not compile and load on setProjectPath(path).", e);
-        }
+        requestCompileAndLoad(0);
     }
 
     public FileHandle getSrcPath() {
@@ -256,6 +419,33 @@ public class ScriptManager {
     }
 
 
+    /**
+     * stops watching the source path, cancels background compilations and waits for the compiled classes being written
+     */
+    public void dispose(){
+        if(fileWatcher != null)fileWatcher.stop();
+        compileRequests.incrementAndGet();
+        compileExecutor.shutdown();
+        try {
+            if (!compileExecutor.awaitTermination(10, TimeUnit.SECONDS)) log.error("Compilation did not finish.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if(compilationManager != null)compilationManager.dispose();
+        compilerService.dispose();
+    }
+
+
+    public interface ReloadListener {
+        /**
+         * Called on the GL thread between two frames after the context class loader has been set.
+         * Instances of the former classes are still alive.
+         * @param classLoader the loader of the new classes
+         */
+        void reloaded(ClassLoader classLoader);
+    }
+
+
     // -- debug --
 
     public void debugLoadedClasses(){
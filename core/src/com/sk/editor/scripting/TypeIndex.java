@@ -0,0 +1,117 @@
+package com.sk.editor.scripting;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.ObjectSet;
+
+import java.lang.annotation.Annotation;
+
+/**
+ * The sub types and annotations of one generation of loaded script classes, built once from their
+ * {@link ClassFileInfo} while loading. Queries are map lookups instead of scanning the classes again.
+ * Super types outside the scripts (i.e. Component) are resolved with the class loader, each only once.
+ */
+public class TypeIndex {
+
+    public static final TypeIndex EMPTY = new TypeIndex();
+
+    /**
+     * by binary name of the super class or interface: all script classes extending or implementing it
+     */
+    private final ObjectMap<String, Array<Class<?>>> subTypes = new ObjectMap<>();
+    /**
+     * by binary name of the annotation: all script classes using it on the class, a field or a method
+     */
+    private final ObjectMap<String, Array<Class<?>>> annotated = new ObjectMap<>();
+
+    private TypeIndex() {}
+
+    /**
+     * @param infos by binary name: the infos of the loaded classes
+     * @param classes by binary name: the loaded classes
+     * @param loader the loader of the classes, resolves the super types outside of them
+     */
+    public static TypeIndex build(ObjectMap<String, ClassFileInfo> infos, ObjectMap<String, Class<?>> classes,
+                                  ClassLoader loader) {
+        TypeIndex index = new TypeIndex();
+        ObjectMap<String, ObjectSet<String>> superTypes = new ObjectMap<>();
+        for (ObjectMap.Entry<String, Class<?>> entry : classes) {
+            ClassFileInfo info = infos.get(entry.key);
+            if (info == null) continue;
+            for (String superType : collectSuperTypes(info.name, infos, loader, superTypes)) {
+                add(index.subTypes, superType, entry.value);
+            }
+            for (String annotation : info.annotations) add(index.annotated, annotation, entry.value);
+        }
+        return index;
+    }
+
+    /**
+     * @param type the super class or interface, not included itself
+     * @param out the array to add the found classes to
+     * @return the array
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Array<Class<? extends T>> getSubTypesOf(Class<T> type, Array<Class<? extends T>> out) {
+        Array<Class<?>> classes = subTypes.get(type.getName());
+        if (classes != null) {
+            for (Class<?> cls : classes) out.add((Class<? extends T>) cls);
+        }
+        return out;
+    }
+
+    /**
+     * @param annotation the annotation on the classes, any of their fields or methods
+     * @param out the array to add the found classes to
+     * @return the array
+     */
+    public Array<Class<?>> getTypesAnnotatedWith(Class<? extends Annotation> annotation, Array<Class<?>> out) {
+        Array<Class<?>> classes = annotated.get(annotation.getName());
+        if (classes != null) out.addAll(classes);
+        return out;
+    }
+
+    // -- private --
+
+    private static void add(ObjectMap<String, Array<Class<?>>> map, String key, Class<?> cls) {
+        Array<Class<?>> classes = map.get(key);
+        if (classes == null) map.put(key, classes = new Array<>());
+        classes.add(cls);
+    }
+
+    /**
+     * @param superTypes by binary name: the collected super types, memoized for the classes sharing them
+     * @return all super classes and interfaces of the class, transitively
+     */
+    private static ObjectSet<String> collectSuperTypes(String name, ObjectMap<String, ClassFileInfo> infos,
+                                                       ClassLoader loader, ObjectMap<String, ObjectSet<String>> superTypes) {
+        ObjectSet<String> result = superTypes.get(name);
+        if (result != null) return result;
+        result = new ObjectSet<>();
+        superTypes.put(name, result); // guards against cycles of invalid class files
+
+        ClassFileInfo info = infos.get(name);
+        if (info != null) {
+            if (info.superName != null) addSuperType(info.superName, result, infos, loader, superTypes);
+            for (String interfaceName : info.interfaces) addSuperType(interfaceName, result, infos, loader, superTypes);
+        } else {
+            Class<?> cls;
+            try {
+                cls = Class.forName(name, false, loader);
+            } catch (ClassNotFoundException | LinkageError e) {
+                return result;
+            }
+            if (cls.getSuperclass() != null) addSuperType(cls.getSuperclass().getName(), result, infos, loader, superTypes);
+            for (Class<?> interfaceClass : cls.getInterfaces()) {
+                addSuperType(interfaceClass.getName(), result, infos, loader, superTypes);
+            }
+        }
+        return result;
+    }
+
+    private static void addSuperType(String superType, ObjectSet<String> result, ObjectMap<String, ClassFileInfo> infos,
+                                     ClassLoader loader, ObjectMap<String, ObjectSet<String>> superTypes) {
+        result.add(superType);
+        result.addAll(collectSuperTypes(superType, infos, loader, superTypes));
+    }
+}
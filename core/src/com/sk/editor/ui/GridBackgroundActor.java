@@ -2,35 +2,41 @@ package com.sk.editor.ui;
 
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.Batch;
-import com.badlogic.gdx.graphics.g2d.Sprite;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.scenes.scene2d.ui.Table;
 import com.badlogic.gdx.utils.Logger;
 import com.badlogic.gdx.utils.viewport.Viewport;
 
+/**
+ * Draws a repeating grid texture as a single quad covering the actor or the viewport, independent of the zoom.
+ * The region has to cover its whole texture, the texture wrap is set to repeat.
+ * When the cells become smaller than {@link #getFadeStartSize()} pixels on screen the grid fades out until it is
+ * invisible at {@link #getFadeEndSize()} pixels.
+ */
 public class GridBackgroundActor extends Table {
 
     private static final Logger log = new Logger(GridBackgroundActor.class.toString(), Logger.DEBUG);
 
-    private Sprite sprite;
+    private Texture texture;
     private Viewport sceneViewport;
-    private float u, v, u2, v2;
+    private float regionWidth, regionHeight;
     private int textureRepeatFactor = 1;
     private float textureScaleFactor = 1.0f;
+    private float fadeStartSize = 6, fadeEndSize = 2;
     private boolean fillViewport;
 
     public GridBackgroundActor(TextureRegion region, Viewport sceneViewport) {
-        this.sprite = new Sprite(region);
+        this.texture = region.getTexture();
         this.sceneViewport = sceneViewport;
+        this.regionWidth = region.getRegionWidth();
+        this.regionHeight = region.getRegionHeight();
 
-        u = region.getU();
-        v = region.getV();
-        u2 = region.getU2();
-        v2 = region.getV2();
-
-        calcRegionUV(); // in case default repeat factor != 1
+        if (region.getU() != 0 || region.getV() != 0 || region.getU2() != 1 || region.getV2() != 1)
+            log.error("The region does not cover its whole texture, the texture is repeated instead.");
+        texture.setWrap(Texture.TextureWrap.Repeat, Texture.TextureWrap.Repeat);
     }
 
     // -- public methods --
@@ -43,7 +49,6 @@ public class GridBackgroundActor extends Table {
      */
     public void setTextureRepeatFactor(int textureRepeatFactor) {
         this.textureRepeatFactor = MathUtils.clamp(textureRepeatFactor, 1, Integer.MAX_VALUE);
-        calcRegionUV();
     }
 
     public int getTextureRepeatFactor() {
@@ -55,29 +60,36 @@ public class GridBackgroundActor extends Table {
      */
     public void setTextureScaleFactor(float textureScaleFactor) {
         this.textureScaleFactor = textureScaleFactor;
-
-        // update sprite size
-        float regionWidth = sprite.getRegionWidth();
-        float regionHeight = sprite.getRegionHeight();
-        float newWidth = textureScaleFactor * regionWidth;
-        float newHeight = textureScaleFactor * regionHeight;
-        sprite.setSize(newWidth, newHeight);
-
     }
 
     public float getTextureScaleFactor() {
         return textureScaleFactor;
     }
 
+    /**
+     * @param fadeStartSize the on screen cell width in pixels below which the grid starts fading out
+     * @param fadeEndSize   the on screen cell width in pixels at which the grid is invisible
+     */
+    public void setFade(float fadeStartSize, float fadeEndSize) {
+        this.fadeStartSize = Math.max(fadeStartSize, fadeEndSize);
+        this.fadeEndSize = fadeEndSize;
+    }
+
+    public float getFadeStartSize() {
+        return fadeStartSize;
+    }
+
+    public float getFadeEndSize() {
+        return fadeEndSize;
+    }
+
     @Override
     public void draw(Batch batch, float parentAlpha) {
         OrthographicCamera camera = (OrthographicCamera) (sceneViewport.getCamera());
         float zoom = camera.zoom;
 
-        float worldWidth = sceneViewport.getWorldWidth();
-        float worldHeight = sceneViewport.getWorldHeight();
-        float worldWidthZoomed = worldWidth * zoom;
-        float worldHeightZoomed = worldHeight * zoom;
+        float worldWidthZoomed = sceneViewport.getWorldWidth() * zoom;
+        float worldHeightZoomed = sceneViewport.getWorldHeight() * zoom;
 
         float width = fillViewport ? worldWidthZoomed : getWidth();
         float height = fillViewport ? worldHeightZoomed : getHeight();
@@ -85,28 +97,28 @@ public class GridBackgroundActor extends Table {
         float x0 = fillViewport ? camera.position.x - width / 2f : getX();
         float y0 = fillViewport ? camera.position.y - height / 2f : getY();
 
-        int xMin = ((int) (x0) - (int) sprite.getWidth()) / (int) sprite.getWidth() * (int) sprite.getWidth();
-        int yMin = ((int) (y0) - (int) sprite.getHeight()) / (int) sprite.getHeight() * (int) sprite.getHeight();
+        // size of one texture repetition in world units
+        float cellWidth = regionWidth * textureScaleFactor / textureRepeatFactor;
+        float cellHeight = regionHeight * textureScaleFactor / textureRepeatFactor;
+        if (cellWidth <= 0 || cellHeight <= 0) return;
+
+        // level of detail: fade out if the cells become too small on screen
+        float cellScreenWidth = cellWidth * sceneViewport.getScreenWidth() / worldWidthZoomed;
+        float alpha = MathUtils.clamp((cellScreenWidth - fadeEndSize) / Math.max(fadeStartSize - fadeEndSize, 0.0001f), 0, 1);
+        if (alpha == 0) return;
 
-        int xMax = xMin
-                + (int) Math.ceil(width / (float) sprite.getWidth()) * (int) sprite.getWidth()
-                + (int) sprite.getWidth();
-        int yMax = yMin + (int) Math.ceil(height / (float) sprite.getHeight())
-                * (int) sprite.getHeight() + (int) sprite.getHeight();
+        // texture coordinates in cells, v is flipped. Offset by whole cells to keep the values small
+        float u = x0 / cellWidth;
+        float v = -y0 / cellHeight;
+        float u2 = u + width / cellWidth;
+        float v2 = v - height / cellHeight;
+        float offsetU = MathUtils.floor(u), offsetV = MathUtils.floor(v);
 
-        batch.flush();
         Color color = batch.getColor();
-        batch.setColor(color.r, color.g, color.b, color.a * parentAlpha);
-        // draws the sprite (which may or may not have a repeated texture) repeatedly
-        // to fill out the given bounds (there the texture doesnt need to be repeated actually)
-        for (int x = xMin; x <= xMax; x += sprite.getWidth()) {
-            for (int y = yMin; y <= yMax; y += sprite.getHeight()) {
-                sprite.setPosition(x, y);
-                sprite.draw(batch);
-            }
-        }
-        batch.flush();
-        batch.setColor(color);
+        float oldColor = batch.getPackedColor();
+        batch.setColor(color.r, color.g, color.b, color.a * parentAlpha * alpha);
+        batch.draw(texture, x0, y0, width, height, u - offsetU, v - offsetV, u2 - offsetU, v2 - offsetV);
+        batch.setPackedColor(oldColor);
         //super.draw(batch, parentAlpha);
     }
 
@@ -118,32 +130,4 @@ public class GridBackgroundActor extends Table {
         this.fillViewport = fillViewport;
     }
 
-
-    // -- private --
-
-
-    /**
-     * handles the region repetitions
-     */
-    private void calcRegionUV() {
-        calcRegionUV(this.textureRepeatFactor);
-    }
-
-    /**
-     * handles the region repetitions
-     */
-    private void calcRegionUV(float textureRepeatFactor) {
-        // the region used must obviously be also the instance
-        // of the region used by the image actor
-        float repeatX = u2 * textureRepeatFactor;
-        float repeatY = v2 * textureRepeatFactor;
-        // recalculates the uv values
-        sprite.setRegion(
-                u,
-                v,
-                repeatX,
-                repeatY);
-    }
-
 }
-
@@ -52,6 +52,7 @@ public class MenuBar extends UIBase{
         this.ecsManager = ecsManager;
         this.editorManager = editorManager;
         this.scriptManager = scriptManager;
+        this.scriptManager.addReloadListener(classLoader -> this.scriptManager.debugLoadedClasses());
         init();
     }
 
@@ -309,10 +310,10 @@ public class MenuBar extends UIBase{
 
 
     /**
+     * Sets the project path of the script manager, which compiles and loads in the background.
      * @param projectPath an absolute path to a libgdx project
-     * @return true if the script manager could be successfully compiled and loaded
      */
-    private boolean updateScriptManager(FileHandle projectPath){
+    private void updateScriptManager(FileHandle projectPath){
         try {
             scriptManager.setProjectPath(projectPath, true);
         } catch (Exception e){
@@ -320,9 +321,5 @@ public class MenuBar extends UIBase{
         }
         // update prefs
         editorManager.getPrefKeys().PROJECT_PATH.set(projectPath.path());
-
-        // debug
-        scriptManager.debugLoadedClasses();
-        return true;
     }
 }
@@ -1,22 +1,36 @@
 package com.sk.editor.ui;
 
 import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.utils.SnapshotArray;
 
+import java.util.Arrays;
+
 /**
  * add listeners that get informed whenever the camera is updated
  */
 public class NotifyingOrthographicCamera extends OrthographicCamera {
 
     private final SnapshotArray<CameraListener> cameraListeners = new SnapshotArray<>();
+    private final Matrix4 lastCombined = new Matrix4();
+    private boolean changed = true;
 
 
     @Override
     public void update() {
         super.update();
+        changed = !Arrays.equals(lastCombined.val, combined.val);
+        if (changed) lastCombined.set(combined);
         notifyListeners();
     }
 
+    /**
+     * @return true if the last {@link #update()} changed the projection or view
+     */
+    public boolean isChanged() {
+        return changed;
+    }
+
 
     // -- public methods --
 
@@ -0,0 +1,22 @@
+package com.sk.editor.ui.hierarchy;
+
+import com.badlogic.gdx.scenes.scene2d.ui.Skin;
+import com.sk.editor.ecs.io.SceneFiles;
+
+/**
+ * Stands in for a root canvas whose chunk is still being streamed in. Has no entity.
+ */
+public class ChunkPlaceholderNode extends EntityNode {
+
+    private final SceneFiles.ChunkInfo chunk;
+
+    public ChunkPlaceholderNode(SceneFiles.ChunkInfo chunk, Skin skin) {
+        super(chunk.rootName + " (loading " + chunk.entityCount + ")", skin);
+        this.chunk = chunk;
+        getActor().getColor().a = 0.5f;
+    }
+
+    public SceneFiles.ChunkInfo getChunk() {
+        return chunk;
+    }
+}
@@ -28,6 +28,15 @@ public class EntityNode extends UINode<EntityNode, Entity>{
 
     }
 
+    /**
+     * a node without entity, i.e. a placeholder
+     */
+    protected EntityNode(String text, Skin skin){
+        super(text, skin);
+        setIcon(skin.getDrawable(RegionNames.ENTITY_ICON));
+        lastTag = text;
+    }
+
     @Override
     protected Label newLabel(String text, Skin skin) {
         return new Label(text, skin){
@@ -43,6 +52,7 @@ public class EntityNode extends UINode<EntityNode, Entity>{
     }
 
     private boolean hasEntityTagChanged() {
+        if(transform == null)return false;
         String currentTag = transform.getName();
         if(lastTag.equals(currentTag) == false){
             lastTag = currentTag;
@@ -58,7 +68,7 @@ public class EntityNode extends UINode<EntityNode, Entity>{
      * @throws ReflectionException
      */
     public void setText(String text, boolean changeEntityName) {
-        if(changeEntityName){
+        if(changeEntityName && transform != null){
             transform.setName(text);
         }
         setText(text);
@@ -12,7 +12,10 @@ import com.badlogic.gdx.scenes.scene2d.ui.Table;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Logger;
 import com.badlogic.gdx.utils.Null;
+import com.badlogic.gdx.utils.ObjectMap;
 import com.sk.editor.ecs.ECSManager;
+import com.sk.editor.ecs.io.SceneFiles;
+import com.sk.editor.ecs.io.SceneStreamer;
 import com.sk.editor.ecs.systems.DebugSystem;
 import com.sk.editor.ui.InputManager;
 import com.sk.editor.ui.UINode;
@@ -28,6 +31,11 @@ public class Hierarchy extends UIWindow {
     private UITree<EntityNode, Entity> tree;
     private ECSManager ecsManager;
     private InputManager inputManager;
+    private ObjectMap<SceneFiles.ChunkInfo, ChunkPlaceholderNode> placeholders = new ObjectMap<>();
+    /**
+     * true while adding nodes for entities inserted to the world, their index and parent are already set
+     */
+    private boolean insertingFromWorld;
 
 
     public Hierarchy(Skin skin, ECSManager ecsManager, InputManager inputManager) {
@@ -58,6 +66,7 @@ public class Hierarchy extends UIWindow {
         add(scroll).expand().fill();
 
        addSubscription();
+       addStreamListener();
     }
 
     private void addSubscription(){
@@ -87,13 +96,21 @@ public class Hierarchy extends UIWindow {
                     }
                 }
 
-                // add everything remaining to tree
+                // add everything remaining to tree. roots are committed in any order (i.e. streamed chunks),
+                // so they are placed by their index among the roots already present
                 ids = tmpEntities.getData();
-                for(int i = 0, s = tmpEntities.size(); i < s; i++ ){
-                    int id = ids[i];
-                    Transform transform = ecsManager.getEntity(id).getComponent(Transform.class);
-                    Transform parent = transform.getParent();
-                    insertNode(transform.entity, parent == null ? null : findNode(parent.entity), transform.getIndex());
+                insertingFromWorld = true;
+                try {
+                    for(int i = 0, s = tmpEntities.size(); i < s; i++ ){
+                        int id = ids[i];
+                        Transform transform = ecsManager.getEntity(id).getComponent(Transform.class);
+                        Transform parent = transform.getParent();
+                        if(parent == null)insertNode(transform.entity, null, getRootInsertIndex(transform.getIndex()));
+                        else insertNode(transform.entity, findNode(parent.entity), transform.getIndex());
+                    }
+                } finally {
+                    insertingFromWorld = false;
+                    tmpEntities.clear();
                 }
 
             }
@@ -110,22 +127,82 @@ public class Hierarchy extends UIWindow {
     }
 
 
+    /**
+     * shows placeholders for the root canvases still being streamed in, behind the loaded roots so the position
+     * of a root node stays its index among the roots
+     */
+    private void addStreamListener(){
+        SceneStreamer streamer = ecsManager.getSceneStreamer();
+        for(SceneFiles.ChunkInfo chunk : streamer.getPendingChunks()) addPlaceholder(chunk);
+
+        streamer.addListener(new SceneStreamer.StreamListener() {
+            @Override
+            public void chunkPending(SceneFiles.ChunkInfo chunk) {
+                addPlaceholder(chunk);
+            }
+
+            @Override
+            public void chunkLoaded(SceneFiles.ChunkInfo chunk, int rootId) {
+                ChunkPlaceholderNode node = placeholders.remove(chunk);
+                if(node != null)node.remove();
+            }
+        });
+    }
+
+    private void addPlaceholder(SceneFiles.ChunkInfo chunk){
+        if(chunk.isLoose() || placeholders.containsKey(chunk))return;
+        ChunkPlaceholderNode node = new ChunkPlaceholderNode(chunk, getSkin());
+        placeholders.put(chunk, node);
+        tree.add(node);
+    }
+
+    /**
+     * @return the number of root nodes without the {@link ChunkPlaceholderNode}s, which are always the last ones
+     */
+    private int getEntityRootCount(){
+        Array<EntityNode> roots = tree.getRootNodes();
+        int count = 0;
+        for(int i = 0; i < roots.size; i++){
+            if(!(roots.get(i) instanceof ChunkPlaceholderNode))count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the position among the root nodes before the first root with the same or a greater index
+     */
+    private int getRootInsertIndex(int index){
+        Array<EntityNode> roots = tree.getRootNodes();
+        int low = 0, high = getEntityRootCount();
+        while(low < high){
+            int mid = (low + high) >>> 1;
+            if(roots.get(mid).transform.getIndex() < index)low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
     private UITree<EntityNode, Entity> createTree(){
         return new UITree<EntityNode, Entity>(getSkin()){
             @Override
             public void nodeSelected(EntityNode selectedNode) {
+                if(selectedNode != null && selectedNode.getValue() == null)return; // placeholder
                 // select entity
                 inputManager.setFocusedEntity(selectedNode.getValue());
             }
 
             @Override
             public boolean insertNode(EntityNode node, EntityNode parent, int index) {
-                // setup index
+                // placeholders can not be moved or have children
                 Entity entity = node.getValue();
-                index = Math.min(index, (parent == null ? tree.getRootNodes().size : parent.getChildren().size));
+                if(entity == null || (parent != null && parent.getValue() == null))return false;
+
+                // setup index, roots are counted without the placeholders which stay behind them
+                index = Math.min(index, (parent == null ? getEntityRootCount() : parent.getChildren().size));
 
                 // insert
                 if(super.insertNode(node, parent, index)){
+                    if(insertingFromWorld)return true;
 
                     Transform transform = entity.getComponent(Transform.class);
                     Transform oldParent = transform.getParent();
@@ -179,9 +256,9 @@ public class Hierarchy extends UIWindow {
         // children
         if(withChildren){
             Transform transform = entity.getComponent(Transform.class);
-            for(Entity child : transform.getChildren()){
-                Transform childTransform = child.getComponent(Transform.class);
-                insertNode(child, node, childTransform.getIndex(), true);
+            for(int i = 0, n = transform.getChildCount(); i < n; i++){
+                Transform childTransform = transform.getChildTransform(i);
+                insertNode(childTransform.entity, node, childTransform.getIndex(), true);
             }
         }
 
@@ -150,7 +150,7 @@ public class Inspector extends UIBase {
                         return;
 
                     try {
-                        EditorUtils.setFieldValue(field, obj, parsePrimitiveType(tf.getText(), field.getType()));
+                        setFieldValue(field, obj, parsePrimitiveType(tf.getText(), field.getType()));
                         //log.debug("Changing field value on focus lost");
                     } catch (Exception e) {
                         //log.error("[!!] Resetting value since couldnt set field value");
@@ -184,7 +184,7 @@ public class Inspector extends UIBase {
                 @Override
                 public boolean keyTyped(InputEvent event, char character) {
                     try {
-                        EditorUtils.setFieldValue(field, obj, parsePrimitiveType(tf.getText(), field.getType()));
+                        setFieldValue(field, obj, parsePrimitiveType(tf.getText(), field.getType()));
                         //log.debug("Changing field value");
                     } catch (Exception e) {
                         log.error("Could not set value!");
@@ -205,6 +205,21 @@ public class Inspector extends UIBase {
         return container;
     }
 
+    /**
+     * sets the value of a component field of the current entity and marks it as changed
+     */
+    private void setFieldValue(Field field, Object obj, Object newValue) {
+        EditorUtils.setFieldValue(field, obj, newValue);
+        markChanged();
+    }
+
+    /**
+     * informs the {@link com.sk.editor.ecs.systems.ChangeTracker} so the edit is saved
+     */
+    private void markChanged() {
+        if (currentEntity != null) ecsManager.getChangeTracker().markChanged(currentEntity.getId());
+    }
+
     private UIBase newUIBase() {
         UIBase actor = new UIBase(skin);
         UIStyle style = actor.getStyle();
@@ -241,7 +256,7 @@ public class Inspector extends UIBase {
             @Override
             public void clicked(InputEvent event, float x, float y) {
                 try {
-                    EditorUtils.setFieldValue(field, obj, box.isChecked());
+                    setFieldValue(field, obj, box.isChecked());
                     //log.debug("Changing field value");
                 } catch (Exception e) {
                     log.error("could not change checked state of checkbox on click");
@@ -478,6 +493,7 @@ public class Inspector extends UIBase {
                     log.debug("Creating component " + c +" for entity");
                     try{
                         newComponent = mapper.create(currentEntity);
+                        markChanged();
                     }catch (Exception e){
                         log.error("Could not create component" + c, e);
                         return;